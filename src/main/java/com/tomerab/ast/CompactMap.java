@@ -0,0 +1,275 @@
+package com.tomerab.ast;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * The CompactMap class is the map behind the objects the parser creates. Its
+ * keys and values alternate in one flat array, in insertion order, so a small
+ * object takes one array instead of a LinkedHashMap, its table and an entry
+ * per property, and iterating it reads memory in order.
+ *
+ * Maps of up to {@value #INDEX_THRESHOLD} entries are searched linearly, which
+ * is faster than hashing at that size. Larger maps also keep an open-addressing
+ * index from the hash of each key to its position in the flat array, so the
+ * order of the entries never changes.
+ *
+ * <pre>
+ * CompactMap map = new CompactMap();
+ * map.put("name", new JsonString("Meow"));
+ * JsonObject name = map.get("name");
+ * </pre>
+ */
+public final class CompactMap extends AbstractMap<String, JsonObject> {
+    static final int INDEX_THRESHOLD = 8;
+    private static final Object[] EMPTY = {};
+
+    private Object[] entries = EMPTY; // key0, value0, key1, value1, ...
+    private int size;
+    private int[] index; // Position + 1 of the entry whose key hashes there, or 0.
+    private int modCount;
+
+    public CompactMap() {
+    }
+
+    /**
+     * @param capacity The number of entries to make room for.
+     */
+    public CompactMap(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Capacity must not be negative: " + capacity);
+        }
+        entries = capacity == 0 ? EMPTY : new Object[capacity * 2];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return The key of the entry at {@code position}, in insertion order.
+     */
+    public String keyAt(int position) {
+        Objects.checkIndex(position, size);
+        return (String) entries[position * 2];
+    }
+
+    /**
+     * @return The value of the entry at {@code position}, in insertion order.
+     */
+    public JsonObject valueAt(int position) {
+        Objects.checkIndex(position, size);
+        return (JsonObject) entries[position * 2 + 1];
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return find(key) >= 0;
+    }
+
+    @Override
+    public JsonObject get(Object key) {
+        int i = find(key);
+        return i >= 0 ? (JsonObject) entries[i * 2 + 1] : null;
+    }
+
+    /**
+     * Replaces the value of an existing key in place, keeping its position, or
+     * adds the entry at the end.
+     */
+    @Override
+    public JsonObject put(String key, JsonObject value) {
+        int i = find(key);
+        if (i >= 0) {
+            JsonObject old = (JsonObject) entries[i * 2 + 1];
+            entries[i * 2 + 1] = value;
+            return old;
+        }
+
+        if (size * 2 == entries.length) {
+            entries = Arrays.copyOf(entries, Math.max(8, size * 4));
+            if (index != null) {
+                index = null;
+                buildIndex();
+            }
+        }
+        entries[size * 2] = key;
+        entries[size * 2 + 1] = value;
+        size++;
+        modCount++;
+        if (index != null) {
+            insert(key, size - 1);
+        } else if (size > INDEX_THRESHOLD) {
+            buildIndex();
+        }
+
+        return null;
+    }
+
+    @Override
+    public JsonObject remove(Object key) {
+        int i = find(key);
+        if (i < 0) {
+            return null;
+        }
+        JsonObject old = (JsonObject) entries[i * 2 + 1];
+        removeAt(i);
+        return old;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(entries, 0, size * 2, null);
+        size = 0;
+        index = null;
+        modCount++;
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super String, ? super JsonObject> action) {
+        for (int i = 0; i < size; i++) {
+            action.accept((String) entries[i * 2], (JsonObject) entries[i * 2 + 1]);
+        }
+    }
+
+    @Override
+    public Set<Entry<String, JsonObject>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public int size() {
+                return size;
+            }
+
+            @Override
+            public void clear() {
+                CompactMap.this.clear();
+            }
+
+            @Override
+            public Iterator<Entry<String, JsonObject>> iterator() {
+                return new EntryIterator();
+            }
+        };
+    }
+
+    /**
+     * @return The position of {@code key}, or -1.
+     */
+    private int find(Object key) {
+        if (index == null) {
+            for (int i = 0; i < size; i++) {
+                Object k = entries[i * 2];
+                // Keys from the parser are shared, so most matches are the
+                // same String.
+                if (k == key || (k != null && k.equals(key))) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        int mask = index.length - 1;
+        for (int slot = hash(key) & mask; index[slot] != 0; slot = (slot + 1) & mask) {
+            int i = index[slot] - 1;
+            if (Objects.equals(entries[i * 2], key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void removeAt(int i) {
+        System.arraycopy(entries, i * 2 + 2, entries, i * 2, (size - i - 1) * 2);
+        size--;
+        entries[size * 2] = null;
+        entries[size * 2 + 1] = null;
+        modCount++;
+        // The positions after i have moved, so the index is rebuilt.
+        index = null;
+        if (size > INDEX_THRESHOLD) {
+            buildIndex();
+        }
+    }
+
+    private void buildIndex() {
+        // Keep the index at most half full.
+        index = new int[Integer.highestOneBit(entries.length - 1) << 1];
+        for (int i = 0; i < size; i++) {
+            insert(entries[i * 2], i);
+        }
+    }
+
+    private void insert(Object key, int position) {
+        int mask = index.length - 1;
+        int slot = hash(key) & mask;
+        while (index[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        index[slot] = position + 1;
+    }
+
+    private static int hash(Object key) {
+        int h = Objects.hashCode(key);
+        return h ^ (h >>> 16);
+    }
+
+    private final class EntryIterator implements Iterator<Entry<String, JsonObject>> {
+        private int next;
+        private int last = -1;
+        private int expectedModCount = modCount;
+
+        @Override
+        public boolean hasNext() {
+            return next < size;
+        }
+
+        @Override
+        public Entry<String, JsonObject> next() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (next >= size) {
+                throw new NoSuchElementException();
+            }
+            last = next++;
+            return new MapEntry(last);
+        }
+
+        @Override
+        public void remove() {
+            if (last < 0) {
+                throw new IllegalStateException();
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            removeAt(last);
+            next = last;
+            last = -1;
+            expectedModCount = modCount;
+        }
+    }
+
+    private final class MapEntry extends SimpleEntry<String, JsonObject> {
+        private final int position;
+
+        MapEntry(int position) {
+            super((String) entries[position * 2], (JsonObject) entries[position * 2 + 1]);
+            this.position = position;
+        }
+
+        @Override
+        public JsonObject setValue(JsonObject value) {
+            entries[position * 2 + 1] = value;
+            return super.setValue(value);
+        }
+    }
+}
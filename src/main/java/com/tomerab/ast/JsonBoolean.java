@@ -3,12 +3,23 @@ package com.tomerab.ast;
 import com.tomerab.visitor.JsonVisitor;
 
 public class JsonBoolean extends JsonObject {
-    private boolean bool;
+    // The instances the parser shares between all boolean values.
+    public static final JsonBoolean TRUE = new JsonBoolean(true);
+    public static final JsonBoolean FALSE = new JsonBoolean(false);
+
+    private final boolean bool;
 
     public JsonBoolean(boolean bool) {
         this.bool = bool;
     }
 
+    /**
+     * @return {@link #TRUE} or {@link #FALSE}.
+     */
+    public static JsonBoolean valueOf(boolean bool) {
+        return bool ? TRUE : FALSE;
+    }
+
     @Override
     @SuppressWarnings("unchecked")
     public Boolean getValue() {
@@ -4,19 +4,100 @@ import java.math.BigDecimal;
 
 import com.tomerab.visitor.JsonVisitor;
 
+/**
+ * A number with a fraction or an exponent. Decimals parsed from a document keep
+ * their source text, which is converted to a BigDecimal on first use or to a
+ * double by {@link #doubleValue()}.
+ */
 public class JsonDecimal extends JsonNumber {
+    // Powers of ten that are exact doubles, for the fast path of doubleValue().
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
     private BigDecimal decimal;
+    private String text;
 
     public JsonDecimal(BigDecimal decimal) {
         this.decimal = decimal;
     }
 
+    /**
+     * @param text The source text of a decimal, such as "-1.5e3".
+     */
+    public JsonDecimal(String text) {
+        this.text = text;
+    }
+
     @Override
     @SuppressWarnings("unchecked")
     public BigDecimal getValue() {
+        if (decimal == null) {
+            decimal = new BigDecimal(text);
+        }
         return decimal;
     }
 
+    /**
+     * Converts the value to the nearest double. When the digits fit in the
+     * 53-bit mantissa and the power of ten is exact, the result is computed
+     * with a single multiplication or division, which is correctly rounded.
+     */
+    public double doubleValue() {
+        if (text == null) {
+            return decimal.doubleValue();
+        }
+
+        int i = 0, len = text.length();
+        boolean negative = text.charAt(0) == '-';
+        if (negative) {
+            i++;
+        }
+
+        long mantissa = 0;
+        int scale = 0;
+        boolean fraction = false;
+        for (; i < len; i++) {
+            char ch = text.charAt(i);
+            if (ch == '.') {
+                fraction = true;
+            } else if (ch >= '0' && ch <= '9') {
+                mantissa = mantissa * 10 + (ch - '0');
+                if (mantissa >= MAX_EXACT_MANTISSA) {
+                    return Double.parseDouble(text);
+                }
+                if (fraction) {
+                    scale--;
+                }
+            } else {
+                break;
+            }
+        }
+
+        if (i < len) { // Exponent
+            int exponent;
+            try {
+                exponent = Integer.parseInt(text, i + 1, len, 10);
+            } catch (NumberFormatException e) {
+                return Double.parseDouble(text);
+            }
+            scale += exponent;
+        }
+
+        if (scale < -22 || scale > 22) {
+            return Double.parseDouble(text);
+        }
+        double value = scale < 0 ? mantissa / POWERS_OF_TEN[-scale] : mantissa * POWERS_OF_TEN[scale];
+        return negative ? -value : value;
+    }
+
+    @Override
+    public String getText() {
+        return text != null ? text : decimal.toString();
+    }
+
     @Override
     public void accept(JsonVisitor visitor) {
         visitor.visit(this);
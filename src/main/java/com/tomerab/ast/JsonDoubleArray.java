@@ -0,0 +1,132 @@
+package com.tomerab.ast;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+import com.tomerab.visitor.JsonVisitor;
+
+/**
+ * An array whose elements are all plain decimals such as "-0.25", or integers,
+ * of at most 15 digits, held in a {@code double[]} rather than as a list of
+ * {@link JsonDecimal} nodes. Every such number converts to a double and back
+ * exactly, so with the number of fraction digits of each element kept in a
+ * byte the array still prints as it was written.
+ *
+ * {@link #getValue()} is a read-only view that creates the nodes as they are
+ * accessed.
+ */
+public class JsonDoubleArray extends JsonArray {
+    /** The scale of an element that was written as an integer. */
+    public static final byte INTEGER = -1;
+
+    private static final long[] POWERS_OF_TEN = {
+            1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L, 100000000L, 1000000000L,
+            10000000000L, 100000000000L, 1000000000000L, 10000000000000L, 100000000000000L, 1000000000000000L
+    };
+
+    private final double[] values;
+    private final byte[] scales;
+    private List<JsonObject> view;
+
+    /**
+     * @param values The elements.
+     * @param scales The number of fraction digits each element was written
+     *               with, at most 15, or {@link #INTEGER}.
+     */
+    public JsonDoubleArray(double[] values, byte[] scales) {
+        super(null);
+        if (values.length != scales.length) {
+            throw new IllegalArgumentException("Expected " + values.length + " scales, got " + scales.length);
+        }
+        this.values = values;
+        this.scales = scales;
+    }
+
+    public int size() {
+        return values.length;
+    }
+
+    public double getDouble(int index) {
+        return values[index];
+    }
+
+    /**
+     * @return Whether the element was written as an integer.
+     */
+    public boolean isInteger(int index) {
+        return scales[index] == INTEGER;
+    }
+
+    /**
+     * @return A copy of the elements.
+     */
+    public double[] toDoubleArray() {
+        return Arrays.copyOf(values, values.length);
+    }
+
+    /**
+     * Copies the elements into {@code dest} and their scales into
+     * {@code destScales}, both starting at {@code destPos}.
+     */
+    public void copyTo(double[] dest, byte[] destScales, int destPos) {
+        System.arraycopy(values, 0, dest, destPos, values.length);
+        System.arraycopy(scales, 0, destScales, destPos, scales.length);
+    }
+
+    /**
+     * @return The element as it was written in the source.
+     */
+    public String getText(int index) {
+        double value = values[index];
+        int scale = scales[index];
+        if (scale == INTEGER) {
+            return Long.toString((long) value);
+        }
+
+        // The digits are recovered exactly, since the double is within half a
+        // unit in the last place of the decimal it was parsed from.
+        long digits = Math.round(Math.abs(value) * POWERS_OF_TEN[scale]);
+        String str = Long.toString(digits);
+        StringBuilder text = new StringBuilder(str.length() + scale + 3);
+        if (Double.doubleToRawLongBits(value) < 0) {
+            text.append('-');
+        }
+        for (int i = str.length(); i <= scale; i++) {
+            text.append('0');
+        }
+        text.append(str);
+        text.insert(text.length() - scale, '.');
+        return text.toString();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<JsonObject> getValue() {
+        if (view == null) {
+            view = new Elements();
+        }
+        return view;
+    }
+
+    @Override
+    public void accept(JsonVisitor visitor) {
+        visitor.visit(this);
+    }
+
+    private final class Elements extends AbstractList<JsonObject> implements RandomAccess {
+        @Override
+        public JsonObject get(int index) {
+            if (scales[index] == INTEGER) {
+                return JsonInteger.valueOf((long) values[index]);
+            }
+            return new JsonDecimal(getText(index));
+        }
+
+        @Override
+        public int size() {
+            return values.length;
+        }
+    }
+}
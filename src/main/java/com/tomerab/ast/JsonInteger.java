@@ -4,19 +4,88 @@ import java.math.BigInteger;
 
 import com.tomerab.visitor.JsonVisitor;
 
+/**
+ * An integer value. Integers that fit in a long are held as one; larger ones
+ * keep their source text and are converted to a BigInteger on first use.
+ */
 public class JsonInteger extends JsonNumber {
+    // Small integers are shared, the way Integer.valueOf() shares them.
+    private static final int CACHE_LOW = -128, CACHE_HIGH = 1023;
+    private static final JsonInteger[] CACHE = new JsonInteger[CACHE_HIGH - CACHE_LOW + 1];
+
+    static {
+        for (int i = 0; i < CACHE.length; i++) {
+            CACHE[i] = new JsonInteger(i + CACHE_LOW);
+        }
+    }
+
     private BigInteger integer;
+    private long longVal;
+    private String text;
 
     public JsonInteger(BigInteger integer) {
         this.integer = integer;
     }
 
+    public JsonInteger(long longVal) {
+        this.longVal = longVal;
+    }
+
+    /**
+     * @return A shared instance for integers from -128 to 1023, a new one
+     *         otherwise.
+     */
+    public static JsonInteger valueOf(long longVal) {
+        if (longVal >= CACHE_LOW && longVal <= CACHE_HIGH) {
+            return CACHE[(int) longVal - CACHE_LOW];
+        }
+        return new JsonInteger(longVal);
+    }
+
+    /**
+     * @param text The source text of an integer, such as "-12".
+     */
+    public JsonInteger(String text) {
+        this.text = text;
+    }
+
     @Override
     @SuppressWarnings("unchecked")
     public BigInteger getValue() {
+        if (integer == null) {
+            integer = text != null ? new BigInteger(text) : BigInteger.valueOf(longVal);
+        }
         return integer;
     }
 
+    /**
+     * @return Whether the value fits in a long.
+     */
+    public boolean isLong() {
+        if (text == null && integer == null) {
+            return true;
+        }
+        return getValue().bitLength() < Long.SIZE;
+    }
+
+    /**
+     * @throws ArithmeticException if the value does not fit in a long.
+     */
+    public long longValue() {
+        if (text == null && integer == null) {
+            return longVal;
+        }
+        return getValue().longValueExact();
+    }
+
+    @Override
+    public String getText() {
+        if (text != null) {
+            return text;
+        }
+        return integer != null ? integer.toString() : Long.toString(longVal);
+    }
+
     @Override
     public void accept(JsonVisitor visitor) {
         visitor.visit(this);
@@ -0,0 +1,72 @@
+package com.tomerab.ast;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+import com.tomerab.visitor.JsonVisitor;
+
+/**
+ * An array whose elements are all integers that fit in a long, held in a
+ * {@code long[]} rather than as a list of {@link JsonInteger} nodes.
+ * {@link #getValue()} is a read-only view that creates the nodes as they are
+ * accessed.
+ */
+public class JsonLongArray extends JsonArray {
+    private final long[] values;
+    private List<JsonObject> view;
+
+    public JsonLongArray(long[] values) {
+        super(null);
+        this.values = values;
+    }
+
+    public int size() {
+        return values.length;
+    }
+
+    public long getLong(int index) {
+        return values[index];
+    }
+
+    /**
+     * @return A copy of the elements.
+     */
+    public long[] toLongArray() {
+        return Arrays.copyOf(values, values.length);
+    }
+
+    /**
+     * Copies the elements into {@code dest}, starting at {@code destPos}.
+     */
+    public void copyTo(long[] dest, int destPos) {
+        System.arraycopy(values, 0, dest, destPos, values.length);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<JsonObject> getValue() {
+        if (view == null) {
+            view = new Elements();
+        }
+        return view;
+    }
+
+    @Override
+    public void accept(JsonVisitor visitor) {
+        visitor.visit(this);
+    }
+
+    private final class Elements extends AbstractList<JsonObject> implements RandomAccess {
+        @Override
+        public JsonObject get(int index) {
+            return JsonInteger.valueOf(values[index]);
+        }
+
+        @Override
+        public int size() {
+            return values.length;
+        }
+    }
+}
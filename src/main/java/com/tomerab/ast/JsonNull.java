@@ -3,6 +3,9 @@ package com.tomerab.ast;
 import com.tomerab.visitor.JsonVisitor;
 
 public class JsonNull extends JsonObject {
+    /** The instance the parser shares between all null values. */
+    public static final JsonNull INSTANCE = new JsonNull();
+
     public Object getNull() {
         return null;
     }
@@ -1,4 +1,9 @@
 package com.tomerab.ast;
 
 public abstract class JsonNumber extends JsonObject {
+    /**
+     * @return The number as it was written in the source, without converting
+     *         it to a numeric type when the source text was kept.
+     */
+    public abstract String getText();
 }
@@ -1,20 +1,59 @@
 package com.tomerab.ast;
 
+import com.tomerab.lexer.JsonLexer;
 import com.tomerab.visitor.JsonVisitor;
 
+/**
+ * A JSON string. Strings read by the parser keep the text they were written
+ * with, and strings with escapes are only decoded when {@link #getValue()} is
+ * called.
+ */
 public class JsonString extends JsonObject {
     private String string;
+    private final String source; // Text between the quotes in the input, or null.
+    private final boolean escaped;
 
     public JsonString(String string) {
         this.string = string;
+        this.source = null;
+        this.escaped = false;
+    }
+
+    /**
+     * Creates a string from its text between the quotes in the input.
+     *
+     * @param escaped Whether the text has escapes, tabs or newlines to decode.
+     */
+    public JsonString(String source, boolean escaped) {
+        this.string = escaped ? null : source;
+        this.source = source;
+        this.escaped = escaped;
     }
 
     @Override
     @SuppressWarnings("unchecked")
     public String getValue() {
+        if (string == null) {
+            string = JsonLexer.unescape(source);
+        }
         return string;
     }
 
+    /**
+     * @return The text of the string as it was written between its quotes, or
+     *         its value if it was not read from an input.
+     */
+    public String getSource() {
+        return source != null ? source : string;
+    }
+
+    /**
+     * @return Whether {@link #getSource()} has escapes, tabs or newlines.
+     */
+    public boolean hasEscapes() {
+        return escaped;
+    }
+
     @Override
     public void accept(JsonVisitor visitor) {
         visitor.visit(this);
@@ -0,0 +1,1004 @@
+package com.tomerab.lexer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+import com.tomerab.lexer.JsonToken.JsonType;
+
+/**
+ * The JsonByteLexer class lexes UTF-8 encoded JSON directly from bytes, without
+ * decoding the input to characters first.
+ *
+ * Every structural character of JSON is ASCII, so only the contents of strings
+ * ever need decoding. String contents are checked for non-ASCII bytes eight at
+ * a time; pure ASCII strings are copied out without going through the UTF-8
+ * decoder, the rest are validated in one pass and then decoded. Strings read
+ * with {@link #nextToken()} are validated but only decoded when
+ * {@link #stringValue()} is called. Token offsets are byte offsets in the
+ * input.
+ *
+ * With {@link #enableStructuralIndex(boolean)} the input is first indexed by a
+ * {@link StructuralIndexer}, and the lexer jumps over whitespace and the
+ * contents of strings from one indexed offset to the next. The tokens are the
+ * same with and without the index.
+ *
+ * <pre>
+ * JsonByteLexer lexer = new JsonByteLexer(Files.readAllBytes(path));
+ * JsonParser parser = new JsonParser(lexer);
+ * JsonObject jsonObject = parser.parse();
+ * </pre>
+ */
+public class JsonByteLexer implements JsonTokenizer {
+    private static final int DEFAULT_BUFFER_SIZE = 8192;
+    private static final int DEFAULT_WINDOW_SIZE = 1 << 28; // 256 MiB
+    private static final int INDEX_CHUNK_SIZE = 1 << 16; // Bytes indexed at a time.
+
+    private ByteBuffer buf;
+    private int limit;
+    private int pos;
+    private long base; // Offset of buf.get(0) in the input.
+    private final ByteInput input;
+    private boolean eof;
+    private byte[] scratch = new byte[64];
+
+    // Lines are only counted when a cursor is asked for, or before bytes are
+    // dropped from the window.
+    private int lineScan; // Index up to which lines have been counted.
+    private int lines; // Newlines before lineScan.
+    private long lineStart; // Offset of the first byte of the line at lineScan.
+
+    // The current token. Its bytes stay addressable until the next token.
+    private JsonType tokenType;
+    private int tokenStart, tokenEnd;
+    private int mark = -1; // Index of the first byte fill() must keep, or -1.
+    private long kept = -1; // Offset of the first byte kept for span(), or -1.
+    private ByteBuffer spans; // The read-only view of buf that span() returns, or null.
+    private boolean tokenEscaped; // The current string has escapes to decode.
+    private boolean tokenNonAscii; // The current string has multi-byte characters.
+    private boolean boolValue;
+
+    // The structural index, see enableStructuralIndex().
+    private StructuralIndexer indexer;
+    private int[] structurals;
+    private int structuralCount, nextStructural;
+    private int indexedTo = -1; // End of the indexed bytes, or -1 if the index must be rebuilt.
+
+    /**
+     * Supplies the lexer with its input one window at a time.
+     */
+    interface ByteInput {
+        /**
+         * Returns the window of the input that starts at offset {@code from}. Its
+         * first {@code buffered} bytes are the bytes the lexer still needs from
+         * the current window, and it holds more bytes than that unless the input
+         * is exhausted.
+         *
+         * @return The next window, indexed from 0, or null if the input is
+         *         exhausted and the current window is still intact.
+         */
+        ByteBuffer refill(long from, int buffered) throws IOException;
+    }
+
+    public JsonByteLexer(byte[] bytes) {
+        this(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * Creates a lexer over the remaining bytes of a buffer. The buffer is not
+     * copied and its position is not modified.
+     */
+    public JsonByteLexer(ByteBuffer bytes) {
+        this.buf = bytes.slice();
+        this.limit = buf.limit();
+        this.input = null;
+        this.eof = true;
+    }
+
+    public JsonByteLexer(InputStream in) {
+        this(in, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Creates a lexer that reads from a stream through a buffer of the given
+     * initial size. The buffer only grows when a single token does not fit in
+     * it.
+     */
+    public JsonByteLexer(InputStream in, int bufferSize) {
+        this(new StreamInput(in, bufferSize));
+    }
+
+    /**
+     * Creates a lexer that memory maps a file and lexes the mapped bytes
+     * directly. Files larger than the mapping window, including files over
+     * 2 GB, are mapped one window at a time. The channel must stay open while
+     * the lexer is in use.
+     */
+    public JsonByteLexer(FileChannel channel) throws IOException {
+        this(channel, DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * Creates a lexer that memory maps a file through windows of the given
+     * size. A window is only made larger when a single token does not fit in
+     * it.
+     */
+    public JsonByteLexer(FileChannel channel, int windowSize) throws IOException {
+        this(new MappedInput(channel, windowSize));
+    }
+
+    JsonByteLexer(ByteInput input) {
+        this.buf = ByteBuffer.allocate(0);
+        this.input = input;
+    }
+
+    /**
+     * Makes the lexer index its input before lexing it, so that whitespace and
+     * string contents are skipped in bulk rather than byte by byte. Must be
+     * called before the first token is read.
+     *
+     * @param vectorized Whether to index with the Vector API. It is only used if
+     *                   the {@code jdk.incubator.vector} module has been added
+     *                   to the JVM; otherwise the input is indexed by a scalar
+     *                   loop that finds the same offsets.
+     */
+    public void enableStructuralIndex(boolean vectorized) {
+        indexer = StructuralIndexer.create(vectorized);
+        structurals = new int[INDEX_CHUNK_SIZE];
+    }
+
+    @Override
+    public boolean hasNext() {
+        skipWhitespace();
+        return pos < limit;
+    }
+
+    /**
+     * Computes the line and column of the current position from its offset.
+     * Columns count bytes.
+     */
+    @Override
+    public JsonLexer.Cursor getCursor() {
+        countLines(pos);
+        return new JsonLexer.Cursor(lines + 1, (int) (base + pos - lineStart) + 1);
+    }
+
+    @Override
+    public JsonType nextToken() {
+        mark = kept >= 0 ? (int) (kept - base) : -1;
+        if (indexer != null) {
+            skipIndexedWhitespace();
+        } else {
+            skipWhitespace();
+        }
+        tokenStart = tokenEnd = pos;
+        mark = kept >= 0 ? (int) (kept - base) : pos;
+
+        if (pos >= limit) {
+            return tokenType = null;
+        }
+
+        byte currentByte = buf.get(pos);
+        JsonType type;
+
+        switch (currentByte) {
+            case '{' -> {
+                pos++;
+                type = JsonType.OBJ_OPEN;
+            }
+            case '}' -> {
+                pos++;
+                type = JsonType.OBJ_CLOSE;
+            }
+            case ',' -> {
+                pos++;
+                type = JsonType.COMMA;
+            }
+            case ':' -> {
+                pos++;
+                type = JsonType.COLON;
+            }
+            case '"' -> {
+                pos++;
+                type = indexer != null ? scanIndexedString() : scanString();
+            }
+            case '[' -> {
+                pos++;
+                type = JsonType.ARR_OPEN;
+            }
+            case ']' -> {
+                pos++;
+                type = JsonType.ARR_CLOSE;
+            }
+            default -> {
+                if (isDigit(currentByte) || currentByte == '-') {
+                    type = scanNumber();
+                } else if (currentByte == 't' || currentByte == 'f') {
+                    type = scanBoolean();
+                } else if (currentByte == 'n') {
+                    type = scanNull();
+                } else {
+                    throw new IllegalArgumentException("Unexpected character: " + describe(pos));
+                }
+            }
+        }
+
+        tokenEnd = pos;
+        return tokenType = type;
+    }
+
+    @Override
+    public JsonType skipContainer() {
+        if (tokenType != JsonType.OBJ_OPEN && tokenType != JsonType.ARR_OPEN) {
+            throw new IllegalStateException("Not at the start of an object or array");
+        }
+
+        mark = kept >= 0 ? (int) (kept - base) : -1; // The skipped bytes do not need to stay addressable.
+        int depth = 1;
+        boolean inString = false;
+        while (true) {
+            if (pos >= limit) {
+                if (eof) {
+                    return tokenType = null;
+                }
+                fill(pos);
+                continue;
+            }
+
+            byte b = buf.get(pos++);
+            if (inString) {
+                if (b == '"') {
+                    inString = false;
+                } else if (b == '\\') {
+                    if (!ensure(1)) {
+                        return tokenType = null;
+                    }
+                    pos++; // The escaped byte may be a quote.
+                }
+            } else if (b == '"') {
+                inString = true;
+            } else if (b == '{' || b == '[') {
+                depth++;
+            } else if ((b == '}' || b == ']') && --depth == 0) {
+                tokenEnd = pos;
+                return tokenType = b == '}' ? JsonType.OBJ_CLOSE : JsonType.ARR_CLOSE;
+            }
+        }
+    }
+
+    /**
+     * Makes the lexer read the remaining bytes of another buffer from the
+     * start, keeping the space it has allocated, such as its structural
+     * index. Only lexers over a byte array or a buffer can be reset.
+     *
+     * @throws IllegalStateException if the lexer reads from a stream or a file.
+     */
+    public void reset(ByteBuffer bytes) {
+        if (input != null) {
+            throw new IllegalStateException("Only a lexer over a buffer can be reset");
+        }
+
+        buf = bytes.slice();
+        spans = null;
+        limit = buf.limit();
+        base = 0;
+        seek(0);
+        lineScan = lines = 0;
+        lineStart = 0;
+    }
+
+    /**
+     * Moves back to the start of the current token, so that the next call to
+     * {@link #nextToken()} reads it again. {@link JsonPushLexer} does this when
+     * its input runs out in the middle of a token.
+     */
+    void rewind() {
+        pos = tokenStart;
+        tokenType = null;
+    }
+
+    /**
+     * Moves the lexer to {@code offset} in its input, which must not be inside
+     * a string. The next token is read from there. Only lexers over a byte
+     * array or a buffer can seek.
+     *
+     * @throws IllegalStateException if the lexer reads from a stream or a file.
+     */
+    public void seek(long offset) {
+        if (input != null) {
+            throw new IllegalStateException("Only a lexer over a buffer can seek");
+        }
+        if (offset < 0 || offset > limit) {
+            throw new IndexOutOfBoundsException("Offset " + offset + " out of bounds for length " + limit);
+        }
+
+        pos = tokenStart = tokenEnd = (int) offset;
+        tokenType = null;
+        mark = -1;
+        kept = -1;
+        indexedTo = -1;
+        if (pos < lineScan) { // Count the lines again from the start.
+            lineScan = lines = 0;
+            lineStart = 0;
+        }
+    }
+
+    /**
+     * Keeps the input from {@code offset} on addressable while more tokens are
+     * read, so that {@link #span(long, long)} can return it, until another
+     * offset is kept. Only bytes the lexer still holds can be kept, from the
+     * start of the current token on. The kept bytes stay in memory, so a
+     * stream's buffer grows with the span.
+     *
+     * @param offset The offset to keep from, or -1 to stop keeping bytes.
+     * @throws IndexOutOfBoundsException if the lexer no longer holds the byte
+     *                                   at the offset.
+     */
+    public void keepFrom(long offset) {
+        if (offset >= 0) {
+            checkHeld(offset, offset);
+        }
+        kept = offset;
+        mark = offset >= 0 ? Math.min((int) (offset - base), tokenStart) : tokenStart;
+    }
+
+    /**
+     * Returns the bytes of the input from {@code from} to {@code to} as a
+     * read-only buffer, without copying them. The buffer is only valid until
+     * the next token is read, and is reused by the next call. The lexer holds the bytes of the current token,
+     * and those from the offset passed to {@link #keepFrom(long)} on.
+     *
+     * @throws IndexOutOfBoundsException if the lexer does not hold the bytes.
+     */
+    public ByteBuffer span(long from, long to) {
+        checkHeld(from, to);
+        if (spans == null) {
+            spans = buf.asReadOnlyBuffer();
+        }
+        return spans.limit((int) (to - base)).position((int) (from - base));
+    }
+
+    private void checkHeld(long from, long to) {
+        long first = base + tokenStart;
+        if (kept >= 0 && kept < first) {
+            first = kept;
+        }
+        if (from < first || to < from || to > base + limit) {
+            throw new IndexOutOfBoundsException("Bytes " + from + " to " + to + " are not held by the lexer, which holds "
+                    + first + " to " + (base + limit));
+        }
+    }
+
+    @Override
+    public long tokenStart() {
+        return base + tokenStart;
+    }
+
+    @Override
+    public long tokenEnd() {
+        return base + tokenEnd;
+    }
+
+    @Override
+    public String stringValue() {
+        requireToken(JsonType.STRING);
+        int from = tokenStart + 1, to = tokenEnd - 1; // Without the quotes.
+        if (tokenEscaped) {
+            return decodeEscaped(from, to);
+        }
+
+        return tokenNonAscii ? utf8(from, to) : ascii(from, to);
+    }
+
+    @Override
+    public String stringSource() {
+        requireToken(JsonType.STRING);
+        int from = tokenStart + 1, to = tokenEnd - 1;
+        return tokenNonAscii ? utf8(from, to) : ascii(from, to);
+    }
+
+    @Override
+    public boolean hasEscapes() {
+        requireToken(JsonType.STRING);
+        return tokenEscaped;
+    }
+
+    @Override
+    public String stringValue(KeyCache keys) {
+        requireToken(JsonType.STRING);
+        int from = tokenStart + 1, to = tokenEnd - 1;
+        if (tokenEscaped || tokenNonAscii) {
+            return keys.intern(stringValue());
+        }
+
+        String key = keys.find(buf, from, to);
+        return key != null ? key : keys.intern(ascii(from, to));
+    }
+
+    @Override
+    public boolean booleanValue() {
+        requireToken(JsonType.BOOLEAN);
+        return boolValue;
+    }
+
+    @Override
+    public boolean fitsLong() {
+        if (tokenType != JsonType.NUMBER_INTEGER) {
+            return false;
+        }
+        int digits = tokenEnd - tokenStart - (buf.get(tokenStart) == '-' ? 1 : 0);
+        return digits <= 18;
+    }
+
+    @Override
+    public long longValue() {
+        requireToken(JsonType.NUMBER_INTEGER);
+        int i = tokenStart;
+        boolean negative = buf.get(i) == '-';
+        if (negative) {
+            i++;
+        }
+        if (tokenEnd - i > 18) {
+            return integerValue().longValueExact();
+        }
+
+        long value = 0;
+        for (; i < tokenEnd; i++) {
+            value = value * 10 + (buf.get(i) - '0');
+        }
+
+        return negative ? -value : value;
+    }
+
+    @Override
+    public BigInteger integerValue() {
+        requireToken(JsonType.NUMBER_INTEGER);
+        return new BigInteger(ascii(tokenStart, tokenEnd));
+    }
+
+    @Override
+    public BigDecimal decimalValue() {
+        if (tokenType != JsonType.NUMBER_INTEGER) {
+            requireToken(JsonType.NUMBER_DECIMAL);
+        }
+        return new BigDecimal(ascii(tokenStart, tokenEnd));
+    }
+
+    @Override
+    public String numberText() {
+        if (tokenType != JsonType.NUMBER_INTEGER) {
+            requireToken(JsonType.NUMBER_DECIMAL);
+        }
+        return ascii(tokenStart, tokenEnd);
+    }
+
+    private void requireToken(JsonType type) {
+        if (tokenType != type) {
+            throw new IllegalStateException("Current token is " + tokenType + ", not " + type);
+        }
+    }
+
+    private JsonType scanBoolean() {
+        int boolLen = buf.get(pos) == 't' ? 4 : 5; // len(false) = 5, len(true) = 4.
+
+        if (matches("true")) {
+            pos += boolLen;
+            boolValue = true;
+            return JsonType.BOOLEAN;
+        }
+        if (matches("false")) {
+            pos += boolLen;
+            boolValue = false;
+            return JsonType.BOOLEAN;
+        }
+
+        String boolStr = consume(boolLen);
+        throw new IllegalArgumentException("Expected boolean got: '" + boolStr + "'");
+    }
+
+    private JsonType scanNull() {
+        if (matches("null")) {
+            pos += 4;
+            return JsonType.NULL;
+        }
+
+        String nullStr = consume(4);
+        throw new IllegalArgumentException("Expected null got: '" + nullStr + "'");
+    }
+
+    private boolean matches(String literal) {
+        int len = literal.length();
+        if (!ensure(len)) {
+            return false;
+        }
+        for (int i = 0; i < len; i++) {
+            if (buf.get(pos + i) != literal.charAt(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private String consume(int len) {
+        ensure(len);
+        int end = Math.min(pos + len, limit);
+        String str = utf8(pos, end);
+        pos = end;
+        return str;
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    /**
+     * Finds the end of a string whose opening quote has already been consumed,
+     * checking its escapes and UTF-8 sequences without decoding anything.
+     * Multi-byte sequences never contain a quote or a backslash, so the closing
+     * quote can be found byte by byte.
+     */
+    private JsonType scanString() {
+        boolean escaped = false;
+        boolean nonAscii = false;
+
+        while (true) {
+            if (pos >= limit) {
+                if (eof) {
+                    break;
+                }
+                fill(pos);
+                continue;
+            }
+
+            byte b = buf.get(pos);
+            if (b == '"') {
+                if (nonAscii) {
+                    int invalid = Utf8.validate(buf, tokenStart + 1, pos);
+                    if (invalid >= 0) {
+                        throw new IllegalArgumentException("Invalid UTF-8 sequence at offset " + (base + invalid));
+                    }
+                }
+                pos++;
+                tokenEscaped = escaped;
+                tokenNonAscii = nonAscii;
+                return JsonType.STRING;
+            }
+            if (b == '\\') {
+                if (!ensure(2)) {
+                    break;
+                }
+                checkEscape();
+                escaped = true;
+                continue;
+            }
+            if (b == '\n' || b == '\t') {
+                escaped = true;
+            } else if (b < 0) {
+                nonAscii = true;
+            }
+            pos++;
+        }
+
+        throw new IllegalArgumentException("Unterminated string: " + utf8(tokenStart + 1, limit));
+    }
+
+    /**
+     * Finds the end of a string whose opening quote has already been consumed
+     * by jumping to the next indexed quote. Strings with escapes, tabs,
+     * newlines or multi-byte characters, and strings that end past the indexed
+     * bytes, are scanned by {@link #scanString()} instead.
+     */
+    private JsonType scanIndexedString() {
+        int close = nextStructural(pos, tokenStart);
+        if (close < 0 || Utf8.skipPlain(buf, pos, close) != close) {
+            return scanString();
+        }
+
+        pos = close + 1;
+        tokenEscaped = false;
+        tokenNonAscii = false;
+        return JsonType.STRING;
+    }
+
+    /**
+     * Checks the escape sequence at the current position and skips it.
+     */
+    private void checkEscape() {
+        char escaped = (char) (buf.get(pos + 1) & 0xFF);
+        if (escaped == 'u') { // Unicode escape
+            if (!ensure(6)) {
+                throw new IllegalArgumentException("Invalid Unicode escape sequence");
+            }
+            parseHex(pos + 2);
+            pos += 6;
+        } else {
+            JsonLexer.appendEscape(null, escaped);
+            pos += 2;
+        }
+    }
+
+    /**
+     * Decodes validated string contents that contain escapes, decoding the runs
+     * of bytes between them in bulk.
+     */
+    private String decodeEscaped(int from, int to) {
+        StringBuilder result = new StringBuilder(to - from);
+        int runStart = from;
+
+        for (int i = from; i < to; i++) {
+            byte b = buf.get(i);
+            if (b != '\\' && b != '\n' && b != '\t') {
+                continue;
+            }
+
+            result.append(utf8(runStart, i));
+            if (b == '\n') {
+                result.append("\\n");
+            } else if (b == '\t') {
+                result.append("\\t");
+            } else {
+                // Handle escape sequences
+                char escaped = (char) buf.get(++i);
+                if (escaped == 'u') { // Unicode escape
+                    result.append((char) parseHex(i + 1));
+                    i += 4;
+                } else {
+                    JsonLexer.appendEscape(result, escaped);
+                }
+            }
+            runStart = i + 1;
+        }
+
+        return result.append(utf8(runStart, to)).toString();
+    }
+
+    private int parseHex(int from) {
+        int value = 0;
+        for (int i = from; i < from + 4; i++) {
+            value = (value << 4) | JsonLexer.hexDigit(buf.get(i));
+        }
+
+        return value;
+    }
+
+    /**
+     * Finds the end of a number and checks that it is one that
+     * {@link BigInteger} or {@link BigDecimal} can parse, so that the value can
+     * be read later without failing.
+     */
+    private JsonType scanNumber() {
+        boolean hasDot = false;
+        boolean hasExponent = false;
+
+        while (true) {
+            if (pos >= limit) {
+                if (eof) {
+                    break;
+                }
+                fill(pos);
+                continue;
+            }
+            byte b = buf.get(pos);
+
+            if (isDigit(b) || b == '-' || b == '+') {
+                // Part of the number.
+            } else if (b == '.' && !hasDot) {
+                hasDot = true;
+            } else if ((b == 'e' || b == 'E') && !hasExponent) {
+                hasExponent = true;
+                hasDot = true; // 'e' or 'E' implies an exponent, thus disabling further dot usage.
+            } else {
+                break;
+            }
+
+            pos++;
+        }
+
+        if (!isValidNumber(tokenStart, pos)) {
+            throw new RuntimeException("Invalid number format: " + ascii(tokenStart, pos));
+        }
+
+        return hasDot || hasExponent ? JsonType.NUMBER_DECIMAL : JsonType.NUMBER_INTEGER;
+    }
+
+    /**
+     * Matches {@code -?digits*(.digits*)?([eE][+-]?digits+)?} with at least one
+     * digit before the exponent.
+     */
+    private boolean isValidNumber(int from, int to) {
+        int i = from;
+        if (buf.get(i) == '-') {
+            i++;
+        }
+
+        int digits = 0;
+        for (; i < to && isDigit(buf.get(i)); i++) {
+            digits++;
+        }
+        if (i < to && buf.get(i) == '.') {
+            for (i++; i < to && isDigit(buf.get(i)); i++) {
+                digits++;
+            }
+        }
+        if (digits == 0) {
+            return false;
+        }
+
+        if (i < to && (buf.get(i) == 'e' || buf.get(i) == 'E')) {
+            i++;
+            if (i < to && (buf.get(i) == '+' || buf.get(i) == '-')) {
+                i++;
+            }
+            int exponentDigits = 0;
+            for (; i < to && isDigit(buf.get(i)); i++) {
+                exponentDigits++;
+            }
+            if (exponentDigits == 0) {
+                return false;
+            }
+        }
+
+        return i == to;
+    }
+
+    private void skipWhitespace() {
+        while (true) {
+            if (pos >= limit) {
+                if (eof) {
+                    return;
+                }
+                fill(pos);
+                continue;
+            }
+
+            if (!isWhitespace(buf.get(pos))) {
+                return;
+            }
+            pos++;
+        }
+    }
+
+    /**
+     * Brings the line count up to the index {@code to}.
+     */
+    private void countLines(int to) {
+        for (int i = lineScan; i < to; i++) {
+            if (buf.get(i) == '\n') {
+                lines++;
+                lineStart = base + i + 1;
+            }
+        }
+        lineScan = Math.max(lineScan, to);
+    }
+
+    /**
+     * Skips whitespace by jumping to the next indexed offset. Everything
+     * between whitespace and the next offset is whitespace, since the first
+     * byte of any token that follows whitespace is indexed. Single bytes of
+     * whitespace are cheaper to step over than to look up.
+     */
+    private void skipIndexedWhitespace() {
+        if (pos + 1 < limit && isWhitespace(buf.get(pos)) && isWhitespace(buf.get(pos + 1))) {
+            int next = nextStructural(pos, pos);
+            if (next >= 0) {
+                pos = next;
+                return;
+            }
+        }
+        skipWhitespace();
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return JsonLexer.WHITESPACE[b & 0xFF];
+    }
+
+    /**
+     * Finds the first indexed offset at or after {@code from}, indexing more of
+     * the window as needed.
+     *
+     * @param safeStart Where to start indexing if the index has to be rebuilt;
+     *                  must be outside of any string.
+     * @return The offset, or -1 if there is none before the end of the window.
+     */
+    private int nextStructural(int from, int safeStart) {
+        if (indexedTo < 0) {
+            indexer.reset();
+            indexedTo = safeStart;
+            structuralCount = nextStructural = 0;
+        }
+
+        while (true) {
+            while (nextStructural < structuralCount) {
+                int offset = structurals[nextStructural];
+                if (offset >= from) {
+                    return offset;
+                }
+                nextStructural++;
+            }
+            if (indexedTo >= limit) {
+                return -1;
+            }
+
+            int to = (int) Math.min((long) indexedTo + INDEX_CHUNK_SIZE, limit);
+            structuralCount = indexer.index(buf, indexedTo, to, structurals);
+            nextStructural = 0;
+            indexedTo = to;
+        }
+    }
+
+    /**
+     * Decodes UTF-8 bytes, replacing malformed sequences, which only error
+     * messages can contain.
+     */
+    private String utf8(int from, int to) {
+        return new String(bytes(from, to), offsetOf(from), to - from, StandardCharsets.UTF_8);
+    }
+
+    private String ascii(int from, int to) {
+        return new String(bytes(from, to), offsetOf(from), to - from, StandardCharsets.ISO_8859_1);
+    }
+
+    private String describe(int at) {
+        int end = Math.min(at + 4, limit);
+        String str = utf8(at, end);
+        return str.substring(0, Character.charCount(str.codePointAt(0)));
+    }
+
+    /**
+     * @return An array holding the bytes in {@code [from, to)} at
+     *         {@link #offsetOf(int)}: the backing array of a heap buffer, or a
+     *         scratch copy for direct buffers.
+     */
+    private byte[] bytes(int from, int to) {
+        if (buf.hasArray()) {
+            return buf.array();
+        }
+
+        int len = to - from;
+        if (scratch.length < len) {
+            scratch = new byte[Math.max(len, scratch.length * 2)];
+        }
+        buf.get(from, scratch, 0, len);
+        return scratch;
+    }
+
+    private int offsetOf(int from) {
+        return buf.hasArray() ? buf.arrayOffset() + from : 0;
+    }
+
+    private boolean ensure(int len) {
+        while (limit - pos < len) {
+            if (eof) {
+                return false;
+            }
+            fill(pos);
+        }
+
+        return true;
+    }
+
+    /**
+     * Moves the lexer to the next window of its input. Bytes before
+     * {@code keep} and {@link #mark} are dropped, the rest are at the front of
+     * the new window. Sets {@link #eof} once the input is exhausted.
+     *
+     * @param keep The index of the first byte that must stay addressable.
+     * @return The number of positions the kept bytes moved towards the front.
+     * @throws UncheckedIOException if reading the input fails.
+     */
+    private int fill(int keep) {
+        if (mark >= 0 && mark < keep) {
+            keep = mark;
+        }
+
+        countLines(keep); // The bytes before keep are about to be dropped.
+        int buffered = limit - keep;
+        ByteBuffer next;
+        try {
+            next = input.refill(base + keep, buffered);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (next == null) {
+            eof = true;
+            return 0;
+        }
+
+        buf = next;
+        spans = null;
+        base += keep;
+        limit = next.limit();
+        pos -= keep;
+        tokenStart -= keep;
+        tokenEnd -= keep;
+        mark = mark >= 0 ? mark - keep : -1;
+        lineScan -= keep;
+        indexedTo = -1; // The window changed under the index.
+        eof = limit == buffered;
+        return keep;
+    }
+
+    /**
+     * Reads an input stream into a buffer that is compacted before each read.
+     */
+    private static class StreamInput implements ByteInput {
+        private final InputStream in;
+        private byte[] arr;
+        private long arrBase;
+
+        StreamInput(InputStream in, int bufferSize) {
+            if (bufferSize <= 0) {
+                throw new IllegalArgumentException("Buffer size must be positive: " + bufferSize);
+            }
+            this.in = in;
+            this.arr = new byte[bufferSize];
+        }
+
+        @Override
+        public ByteBuffer refill(long from, int buffered) throws IOException {
+            int shift = (int) (from - arrBase);
+            if (shift > 0) {
+                System.arraycopy(arr, shift, arr, 0, buffered);
+            } else if (buffered == arr.length) {
+                byte[] grown = new byte[arr.length * 2];
+                System.arraycopy(arr, 0, grown, 0, buffered);
+                arr = grown;
+            }
+            arrBase = from;
+
+            int read;
+            do {
+                read = in.read(arr, buffered, arr.length - buffered);
+            } while (read == 0);
+
+            // The buffered bytes may have moved, so the window is returned even
+            // when nothing more could be read.
+            return ByteBuffer.wrap(arr).limit(buffered + Math.max(read, 0));
+        }
+    }
+
+    /**
+     * Maps a file one window at a time. Each window starts at the first byte the
+     * lexer still needs, so tokens that straddle two windows are mapped whole
+     * rather than copied. Windows that are no longer referenced are unmapped
+     * when they are garbage collected.
+     */
+    private static class MappedInput implements ByteInput {
+        private final FileChannel channel;
+        private final long size;
+        private final int windowSize;
+
+        MappedInput(FileChannel channel, int windowSize) throws IOException {
+            if (windowSize <= 0) {
+                throw new IllegalArgumentException("Window size must be positive: " + windowSize);
+            }
+            this.channel = channel;
+            this.size = channel.size();
+            this.windowSize = windowSize;
+        }
+
+        @Override
+        public ByteBuffer refill(long from, int buffered) throws IOException {
+            long remaining = size - from;
+            if (remaining <= buffered) {
+                return null;
+            }
+
+            long length = Math.min(remaining, Math.max(windowSize, 2L * buffered));
+            if (length > Integer.MAX_VALUE) {
+                if (buffered == Integer.MAX_VALUE) {
+                    throw new IOException("Token at offset " + from + " is too large to map");
+                }
+                length = Integer.MAX_VALUE;
+            }
+
+            return channel.map(FileChannel.MapMode.READ_ONLY, from, length);
+        }
+    }
+}
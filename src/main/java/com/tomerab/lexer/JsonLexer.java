@@ -1,15 +1,75 @@
 package com.tomerab.lexer;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import com.tomerab.lexer.JsonToken.JsonType;
 
 /**
  * The JsonLexer class is responsible for lexing a JSON string into tokens.
  * It provides methods to iterate over the tokens in the JSON string.
+ *
+ * The lexer walks a position index over the input characters and never copies
+ * the remaining input, so lexing is linear in the size of the document. Every
+ * token it returns carries the offsets of its first and one-past-last
+ * character in the input. Tokens read with {@link #nextToken()} are only
+ * located and checked; their values are decoded when an accessor asks for
+ * them.
+ *
+ * A lexer created from a {@link Reader} or {@link InputStream} reads its input
+ * into a fixed size buffer that is refilled as tokens are consumed. The buffer
+ * only grows when a single token does not fit in it, so memory use does not
+ * depend on the size of the input.
  */
-public class JsonLexer {
-    private String jsonStr;
-    private Cursor cursor;
+public class JsonLexer implements JsonTokenizer {
+    private static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    /**
+     * The whitespace between tokens, indexed by character (or byte) value:
+     * space, tab, newline, carriage return, vertical tab and form feed.
+     */
+    static final boolean[] WHITESPACE = new boolean[256];
+
+    static {
+        for (char ch : new char[] { ' ', '\t', '\n', '\r', '\u000B', '\f' }) {
+            WHITESPACE[ch] = true;
+        }
+    }
+
+    /**
+     * @return Whether a character, or an unsigned byte, is whitespace between
+     *         tokens.
+     */
+    public static boolean isWhitespace(int ch) {
+        return ch >= 0 && ch < WHITESPACE.length && WHITESPACE[ch];
+    }
+
+    private char[] buf;
+    private int limit;
+    private int pos;
+    private long base; // Offset of buf[0] in the input.
+    private final Reader reader;
+    private boolean eof;
+
+    // Lines are only counted when a cursor is asked for, or before characters
+    // are discarded from the buffer.
+    private int lineScan; // Index up to which lines have been counted.
+    private int lines; // Newlines before lineScan.
+    private long lineStart; // Offset of the first character of the line at lineScan.
+
+    // The current token. Its characters stay buffered until the next token.
+    private JsonType tokenType;
+    private int tokenStart, tokenEnd;
+    private int mark = -1; // Index of the first character fill() must keep, or -1.
+    private boolean tokenEscaped; // The current string has escapes to decode.
+    private boolean boolValue;
 
     /**
      * Represents a cursor used for tracking the position in a text file.
@@ -17,6 +77,22 @@ public class JsonLexer {
     public static class Cursor {
         private int col = 1, row = 1;
 
+        public Cursor() {
+        }
+
+        Cursor(int row, int col) {
+            this.row = row;
+            this.col = col;
+        }
+
+        public int getRow() {
+            return row;
+        }
+
+        public int getCol() {
+            return col;
+        }
+
         public void incCol() {
             col++;
         }
@@ -40,119 +116,332 @@ public class JsonLexer {
     }
 
     public JsonLexer(String jsonStr) {
-        this.jsonStr = jsonStr;
-        cursor = new Cursor();
+        this(jsonStr.toCharArray());
     }
 
-    public boolean hasNext() {
-        return !jsonStr.isEmpty();
+    public JsonLexer(char[] buf) {
+        this(buf, 0, buf.length);
     }
 
-    public Cursor getCursor() {
-        return cursor;
+    /**
+     * Creates a lexer over a region of a character array. The array is not
+     * copied, so it must not be modified while the lexer is in use.
+     *
+     * @param buf    The characters to lex.
+     * @param offset The index of the first character to lex.
+     * @param length The number of characters to lex.
+     */
+    public JsonLexer(char[] buf, int offset, int length) {
+        if (offset < 0 || length < 0 || offset + length > buf.length) {
+            throw new IndexOutOfBoundsException("Invalid region: offset " + offset + ", length " + length);
+        }
+        this.buf = buf;
+        this.pos = offset;
+        this.limit = offset + length;
+        this.reader = null;
+        this.eof = true;
+        this.lineScan = offset;
+        this.lineStart = offset;
     }
 
     /**
-     * Advances the cursor to the next token and returns the corresponding
-     * JsonToken.
-     * 
-     * @return The next JsonToken in the JSON string.
-     * @throws IllegalArgumentException if an unexpected character is encountered.
+     * Creates a lexer that reads UTF-8 encoded JSON from a stream.
      */
-    public JsonToken next() {
-        cursor.incCol(findFirstNonWhitespaceIndex(jsonStr));
-        if (jsonStr.charAt(0) == '\n') {
-            cursor.incRow();
-            cursor.resetCol();
+    public JsonLexer(InputStream in) {
+        this(new InputStreamReader(in, StandardCharsets.UTF_8));
+    }
+
+    public JsonLexer(Reader reader) {
+        this(reader, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Creates a lexer that reads JSON from a reader through a buffer of the
+     * given initial size.
+     *
+     * @param reader     The reader to lex.
+     * @param bufferSize The number of characters to buffer.
+     */
+    public JsonLexer(Reader reader, int bufferSize) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("Buffer size must be positive: " + bufferSize);
         }
+        this.buf = new char[bufferSize];
+        this.reader = reader;
+    }
 
-        // Consume whitespace
-        jsonStr = jsonStr.replaceAll("(^[\\r\\n\\s]+|[\\r\\n\\s]+$)", "");
+    @Override
+    public boolean hasNext() {
+        skipWhitespace();
+        return pos < limit;
+    }
 
-        if (jsonStr.isEmpty()) {
-            return null;
+    /**
+     * Computes the line and column of the current position from its offset.
+     */
+    @Override
+    public Cursor getCursor() {
+        countLines(pos);
+        return new Cursor(lines + 1, (int) (base + pos - lineStart) + 1);
+    }
+
+    /**
+     * Advances the cursor to the next token and records its type and location.
+     *
+     * @return The type of the next token, or null if only whitespace remains.
+     * @throws IllegalArgumentException if an unexpected character is encountered.
+     */
+    @Override
+    public JsonType nextToken() {
+        mark = -1;
+        skipWhitespace();
+        tokenStart = tokenEnd = mark = pos;
+
+        if (pos >= limit) {
+            return tokenType = null;
         }
 
-        char currentChar = jsonStr.charAt(0);
+        char currentChar = buf[pos];
+        JsonType type;
 
         switch (currentChar) {
             case '{' -> {
-                jsonStr = advance();
-                return new JsonToken(JsonToken.JsonType.OBJ_OPEN);
+                pos++;
+                type = JsonType.OBJ_OPEN;
             }
             case '}' -> {
-                jsonStr = advance();
-                return new JsonToken(JsonToken.JsonType.OBJ_CLOSE);
+                pos++;
+                type = JsonType.OBJ_CLOSE;
             }
             case ',' -> {
-                jsonStr = advance();
-                return new JsonToken(JsonToken.JsonType.COMMA);
+                pos++;
+                type = JsonType.COMMA;
             }
             case ':' -> {
-                jsonStr = advance();
-                return new JsonToken(JsonToken.JsonType.COLON);
+                pos++;
+                type = JsonType.COLON;
             }
             case '"' -> {
-                jsonStr = advance();
-                return parseString();
+                pos++;
+                type = scanString();
             }
             case '[' -> {
-                jsonStr = advance();
-                return new JsonToken(JsonToken.JsonType.ARR_OPEN);
+                pos++;
+                type = JsonType.ARR_OPEN;
             }
             case ']' -> {
-                jsonStr = advance();
-                return new JsonToken(JsonToken.JsonType.ARR_CLOSE);
+                pos++;
+                type = JsonType.ARR_CLOSE;
             }
             default -> {
-                if (Character.isDigit(currentChar) || currentChar == '-') {
-                    return parseNumber();
+                if (isDigit(currentChar) || currentChar == '-') {
+                    type = scanNumber();
+                } else if (isBooleanPrefix(currentChar)) {
+                    type = scanBoolean();
+                } else if (isNullPrefix(currentChar)) {
+                    type = scanNull();
+                } else {
+                    throw new IllegalArgumentException("Unexpected character: " + currentChar);
                 }
-                if (isBooleanPrefix(currentChar)) {
-                    return parseBoolean();
+            }
+        }
+
+        tokenEnd = pos;
+        return tokenType = type;
+    }
+
+    @Override
+    public JsonType skipContainer() {
+        if (tokenType != JsonType.OBJ_OPEN && tokenType != JsonType.ARR_OPEN) {
+            throw new IllegalStateException("Not at the start of an object or array");
+        }
+
+        mark = -1; // The skipped characters do not need to stay buffered.
+        int depth = 1;
+        boolean inString = false;
+        while (true) {
+            if (pos >= limit) {
+                if (eof) {
+                    return tokenType = null;
                 }
-                if (isNullPrefix(currentChar)) {
-                    return parseNull();
+                fill(pos);
+                continue;
+            }
+
+            char ch = buf[pos++];
+            if (inString) {
+                if (ch == '"') {
+                    inString = false;
+                } else if (ch == '\\') {
+                    if (!ensure(1)) {
+                        return tokenType = null;
+                    }
+                    pos++; // The escaped character may be a quote.
                 }
-                throw new IllegalArgumentException("Unexpected character: " + currentChar);
+            } else if (ch == '"') {
+                inString = true;
+            } else if (ch == '{' || ch == '[') {
+                depth++;
+            } else if ((ch == '}' || ch == ']') && --depth == 0) {
+                tokenEnd = pos;
+                return tokenType = ch == '}' ? JsonType.OBJ_CLOSE : JsonType.ARR_CLOSE;
             }
         }
     }
 
-    private JsonToken parseBoolean() {
-        StringBuilder result = new StringBuilder();
-        int boolLen = jsonStr.charAt(0) == 't' ? 4 : 5; // len(false) = 5, len(true) = 4.
+    @Override
+    public long tokenStart() {
+        return base + tokenStart;
+    }
+
+    @Override
+    public long tokenEnd() {
+        return base + tokenEnd;
+    }
+
+    @Override
+    public String stringValue() {
+        requireToken(JsonType.STRING);
+        int from = tokenStart + 1, to = tokenEnd - 1; // Without the quotes.
+        return tokenEscaped ? decodeEscaped(from, to) : new String(buf, from, to - from);
+    }
+
+    @Override
+    public String stringSource() {
+        requireToken(JsonType.STRING);
+        return new String(buf, tokenStart + 1, tokenEnd - tokenStart - 2);
+    }
+
+    @Override
+    public boolean hasEscapes() {
+        requireToken(JsonType.STRING);
+        return tokenEscaped;
+    }
+
+    @Override
+    public String stringValue(KeyCache keys) {
+        requireToken(JsonType.STRING);
+        int from = tokenStart + 1, to = tokenEnd - 1;
+        return tokenEscaped ? keys.intern(decodeEscaped(from, to)) : keys.intern(buf, from, to);
+    }
+
+    @Override
+    public boolean booleanValue() {
+        requireToken(JsonType.BOOLEAN);
+        return boolValue;
+    }
 
-        while (!jsonStr.isEmpty() && boolLen-- > 0) {
-            result.append(jsonStr.charAt(0));
-            jsonStr = advance();
+    @Override
+    public boolean fitsLong() {
+        if (tokenType != JsonType.NUMBER_INTEGER) {
+            return false;
         }
+        int digits = tokenEnd - tokenStart - (buf[tokenStart] == '-' ? 1 : 0);
+        return digits <= 18;
+    }
 
-        String boolStr = result.toString();
-        if ("true".equals(boolStr) || "false".equals(boolStr)) {
-            return new JsonToken(Boolean.parseBoolean(boolStr));
+    @Override
+    public long longValue() {
+        requireToken(JsonType.NUMBER_INTEGER);
+        int i = tokenStart;
+        boolean negative = buf[i] == '-';
+        if (negative) {
+            i++;
+        }
+        if (tokenEnd - i > 18) {
+            return integerValue().longValueExact();
         }
 
-        throw new IllegalArgumentException("Expected boolean got: '" + boolStr + "'");
+        long value = 0;
+        for (; i < tokenEnd; i++) {
+            value = value * 10 + (buf[i] - '0');
+        }
+
+        return negative ? -value : value;
     }
 
-    private JsonToken parseNull() {
-        StringBuilder result = new StringBuilder();
-        int nullLen = 4;
+    @Override
+    public BigInteger integerValue() {
+        requireToken(JsonType.NUMBER_INTEGER);
+        return new BigInteger(new String(buf, tokenStart, tokenEnd - tokenStart));
+    }
 
-        while (!jsonStr.isEmpty() && nullLen-- > 0) {
-            result.append(jsonStr.charAt(0));
-            jsonStr = advance();
+    @Override
+    public BigDecimal decimalValue() {
+        if (tokenType != JsonType.NUMBER_INTEGER) {
+            requireToken(JsonType.NUMBER_DECIMAL);
         }
+        return new BigDecimal(buf, tokenStart, tokenEnd - tokenStart);
+    }
 
-        String nullStr = result.toString();
-        if ("null".equals(nullStr)) {
-            return new JsonToken(JsonToken.JsonType.NULL);
+    @Override
+    public String numberText() {
+        if (tokenType != JsonType.NUMBER_INTEGER) {
+            requireToken(JsonType.NUMBER_DECIMAL);
         }
+        return new String(buf, tokenStart, tokenEnd - tokenStart);
+    }
 
+    private void requireToken(JsonType type) {
+        if (tokenType != type) {
+            throw new IllegalStateException("Current token is " + tokenType + ", not " + type);
+        }
+    }
+
+    private JsonType scanBoolean() {
+        int boolLen = buf[pos] == 't' ? 4 : 5; // len(false) = 5, len(true) = 4.
+
+        if (matches("true")) {
+            pos += boolLen;
+            boolValue = true;
+            return JsonType.BOOLEAN;
+        }
+        if (matches("false")) {
+            pos += boolLen;
+            boolValue = false;
+            return JsonType.BOOLEAN;
+        }
+
+        String boolStr = consume(boolLen);
+        throw new IllegalArgumentException("Expected boolean got: '" + boolStr + "'");
+    }
+
+    private JsonType scanNull() {
+        if (matches("null")) {
+            pos += 4;
+            return JsonType.NULL;
+        }
+
+        String nullStr = consume(4);
         throw new IllegalArgumentException("Expected null got: '" + nullStr + "'");
     }
 
+    private boolean matches(String literal) {
+        int len = literal.length();
+        if (!ensure(len)) {
+            return false;
+        }
+        for (int i = 0; i < len; i++) {
+            if (buf[pos + i] != literal.charAt(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Consumes up to {@code len} characters and returns them as a string, used
+     * to report malformed literals.
+     */
+    private String consume(int len) {
+        ensure(len);
+        int end = Math.min(pos + len, limit);
+        String str = new String(buf, pos, end - pos);
+        pos = end;
+        return str;
+    }
+
     private boolean isNullPrefix(char ch) {
         return ch == 'n';
     }
@@ -161,126 +450,352 @@ public class JsonLexer {
         return ch == 't' || ch == 'f';
     }
 
-    private JsonToken parseString() {
-        StringBuilder result = new StringBuilder();
-        boolean escaping = false;
+    private static boolean isDigit(char ch) {
+        return ch >= '0' && ch <= '9';
+    }
 
-        while (!jsonStr.isEmpty()) {
-            char currentChar = jsonStr.charAt(0);
-            jsonStr = advance();
+    /**
+     * Finds the end of a string whose opening quote has already been consumed,
+     * checking its escape sequences on the way without decoding them.
+     */
+    private JsonType scanString() {
+        boolean escaped = false;
 
-            if (currentChar == '\n') {
-                result.append("\\n");
+        while (true) {
+            if (pos >= limit) {
+                if (eof) {
+                    break;
+                }
+                fill(pos);
                 continue;
             }
-            if (currentChar == '\t') {
-                result.append("\\t");
+
+            char ch = buf[pos];
+            if (ch == '"') {
+                pos++;
+                tokenEscaped = escaped;
+                return JsonType.STRING;
+            }
+            if (ch == '\\') {
+                if (!ensure(2)) {
+                    break;
+                }
+                checkEscape();
+                escaped = true;
+                continue;
+            }
+            if (ch == '\n' || ch == '\t') {
+                escaped = true;
+            }
+            pos++;
+        }
+
+        throw new IllegalArgumentException("Unterminated string: " + decodeEscaped(tokenStart + 1, limit));
+    }
+
+    /**
+     * Checks the escape sequence at the current position and skips it.
+     */
+    private void checkEscape() {
+        char escaped = buf[pos + 1];
+        if (escaped == 'u') { // Unicode escape
+            if (!ensure(6)) {
+                throw new IllegalArgumentException("Invalid Unicode escape sequence");
+            }
+            parseHex(buf, pos + 2);
+            pos += 6;
+        } else {
+            appendEscape(null, escaped);
+            pos += 2;
+        }
+    }
+
+    /**
+     * Decodes string contents that contain escapes, copying the runs of
+     * characters between them in bulk.
+     */
+    private String decodeEscaped(int from, int to) {
+        return decodeEscaped(buf, from, to);
+    }
+
+    /**
+     * Decodes the escapes in the text of a string as it was written between its
+     * quotes, the same way {@link #stringValue()} does.
+     *
+     * @param source Text returned by {@link JsonTokenizer#stringSource()}.
+     */
+    public static String unescape(String source) {
+        return decodeEscaped(source.toCharArray(), 0, source.length());
+    }
+
+    private static String decodeEscaped(char[] buf, int from, int to) {
+        StringBuilder result = new StringBuilder(to - from);
+        int runStart = from;
+
+        for (int i = from; i < to; i++) {
+            char ch = buf[i];
+            if (ch != '\\' && ch != '\n' && ch != '\t') {
                 continue;
             }
 
-            if (escaping) {
+            result.append(buf, runStart, i - runStart);
+            if (ch == '\n') {
+                result.append("\\n");
+            } else if (ch == '\t') {
+                result.append("\\t");
+            } else if (i + 1 < to) {
                 // Handle escape sequences
-                switch (currentChar) {
-                    case '"':
-                    case '\\':
-                    case '/':
-                        result.append(currentChar);
-                        break;
-                    case 'b':
-                        result.append("\\b");
-                        break;
-                    case 'f':
-                        result.append("\\f");
-                        break;
-                    case 'n':
-                        result.append("\\n");
-                        break;
-                    case 'r':
-                        result.append("\\r");
-                        break;
-                    case 't':
-                        result.append("\\t");
-                        break;
-                    case 'u': // Unicode escape
-                        if (jsonStr.length() >= 4) {
-                            String hex = jsonStr.substring(0, 4);
-                            result.append((char) Integer.parseInt(hex, 16));
-                            jsonStr = jsonStr.substring(4);
-                        } else {
-                            throw new IllegalArgumentException("Invalid Unicode escape sequence");
-                        }
-                        break;
-                    default:
-                        throw new IllegalArgumentException("Invalid escape sequence: \\" + currentChar);
-                }
-                escaping = false;
-            } else {
-                if (currentChar == '\\') {
-                    escaping = true;
-                } else if (currentChar == '"') {
-                    return new JsonToken(result.toString());
+                char escaped = buf[++i];
+                if (escaped == 'u') { // Unicode escape
+                    if (to - i <= 4) {
+                        throw new IllegalArgumentException("Invalid Unicode escape sequence");
+                    }
+                    result.append((char) parseHex(buf, i + 1));
+                    i += 4;
                 } else {
-                    result.append(currentChar);
+                    appendEscape(result, escaped);
                 }
             }
+            runStart = i + 1;
         }
 
-        throw new IllegalArgumentException("Unterminated string: " + result);
+        return result.append(buf, runStart, Math.max(to - runStart, 0)).toString();
     }
 
-    private JsonToken parseNumber() {
-        StringBuilder result = new StringBuilder();
+    private static int parseHex(char[] buf, int from) {
+        int value = 0;
+        for (int i = from; i < from + 4; i++) {
+            value = (value << 4) | hexDigit(buf[i]);
+        }
+
+        return value;
+    }
+
+    static int hexDigit(int ch) {
+        int digit = Character.digit(ch, 16);
+        if (digit < 0) {
+            throw new IllegalArgumentException("Invalid Unicode escape sequence");
+        }
+
+        return digit;
+    }
+
+    /**
+     * Appends the replacement for the escape sequence introduced by {@code ch},
+     * other than unicode escapes. Escapes that stand for control characters are
+     * kept escaped so that they print back the way they were written. With a
+     * null {@code result} the escape is only checked.
+     *
+     * @throws IllegalArgumentException if {@code ch} does not start an escape
+     *                                  sequence.
+     */
+    static void appendEscape(StringBuilder result, char ch) {
+        String replacement;
+        switch (ch) {
+            case '"':
+                replacement = "\"";
+                break;
+            case '\\':
+                replacement = "\\";
+                break;
+            case '/':
+                replacement = "/";
+                break;
+            case 'b':
+                replacement = "\\b";
+                break;
+            case 'f':
+                replacement = "\\f";
+                break;
+            case 'n':
+                replacement = "\\n";
+                break;
+            case 'r':
+                replacement = "\\r";
+                break;
+            case 't':
+                replacement = "\\t";
+                break;
+            default:
+                throw new IllegalArgumentException("Invalid escape sequence: \\" + ch);
+        }
+        if (result != null) {
+            result.append(replacement);
+        }
+    }
+
+    /**
+     * Finds the end of a number and checks that it is one that
+     * {@link BigInteger} or {@link BigDecimal} can parse, so that the value can
+     * be read later without failing.
+     */
+    private JsonType scanNumber() {
         boolean hasDot = false;
         boolean hasExponent = false;
 
-        while (!jsonStr.isEmpty()) {
-            char ch = jsonStr.charAt(0);
+        while (true) {
+            if (pos >= limit) {
+                if (eof) {
+                    break;
+                }
+                fill(pos);
+                continue;
+            }
+            char ch = buf[pos];
 
-            if (Character.isDigit(ch) || ch == '-' || ch == '+') {
-                result.append(ch);
+            if (isDigit(ch) || ch == '-' || ch == '+') {
+                // Part of the number.
             } else if (ch == '.' && !hasDot) {
-                result.append(ch);
                 hasDot = true;
             } else if ((ch == 'e' || ch == 'E') && !hasExponent) {
-                result.append(ch);
                 hasExponent = true;
                 hasDot = true; // 'e' or 'E' implies an exponent, thus disabling further dot usage.
             } else {
                 break;
             }
 
-            jsonStr = advance();
+            pos++;
         }
 
-        String numberStr = result.toString();
-        try {
-            if (numberStr.contains(".") || numberStr.contains("e") || numberStr.contains("E")) {
-                return new JsonToken(new BigDecimal(numberStr));
-            } else {
-                return new JsonToken(new BigInteger(numberStr));
+        if (!isValidNumber(tokenStart, pos)) {
+            throw new RuntimeException("Invalid number format: " + new String(buf, tokenStart, pos - tokenStart));
+        }
+
+        return hasDot || hasExponent ? JsonType.NUMBER_DECIMAL : JsonType.NUMBER_INTEGER;
+    }
+
+    /**
+     * Matches {@code -?digits*(.digits*)?([eE][+-]?digits+)?} with at least one
+     * digit before the exponent.
+     */
+    private boolean isValidNumber(int from, int to) {
+        int i = from;
+        if (buf[i] == '-') {
+            i++;
+        }
+
+        int digits = 0;
+        for (; i < to && isDigit(buf[i]); i++) {
+            digits++;
+        }
+        if (i < to && buf[i] == '.') {
+            for (i++; i < to && isDigit(buf[i]); i++) {
+                digits++;
+            }
+        }
+        if (digits == 0) {
+            return false;
+        }
+
+        if (i < to && (buf[i] == 'e' || buf[i] == 'E')) {
+            i++;
+            if (i < to && (buf[i] == '+' || buf[i] == '-')) {
+                i++;
+            }
+            int exponentDigits = 0;
+            for (; i < to && isDigit(buf[i]); i++) {
+                exponentDigits++;
+            }
+            if (exponentDigits == 0) {
+                return false;
+            }
+        }
+
+        return i == to;
+    }
+
+    private void skipWhitespace() {
+        while (true) {
+            if (pos >= limit) {
+                if (eof) {
+                    return;
+                }
+                fill(pos);
+                continue;
+            }
+
+            char ch = buf[pos];
+            if (ch >= WHITESPACE.length || !WHITESPACE[ch]) {
+                return;
             }
-        } catch (NumberFormatException e) {
-            // Handle any unexpected parsing errors here
-            throw new RuntimeException("Invalid number format: " + numberStr, e);
+            pos++;
         }
     }
 
-    private String advance() {
-        cursor.incCol();
-        return jsonStr.substring(1);
+    /**
+     * Brings the line count up to the index {@code to}.
+     */
+    private void countLines(int to) {
+        for (int i = lineScan; i < to; i++) {
+            if (buf[i] == '\n') {
+                lines++;
+                lineStart = base + i + 1;
+            }
+        }
+        lineScan = Math.max(lineScan, to);
     }
 
-    private static int findFirstNonWhitespaceIndex(String str) {
-        int countTabs = 0;
-        for (int i = 0; i < str.length(); i++) {
-            if (str.charAt(i) == '\t') {
-                countTabs++;
+    /**
+     * Makes sure at least {@code len} characters are buffered after the
+     * current position, reading more input if needed.
+     *
+     * @return Whether {@code len} characters are available.
+     */
+    private boolean ensure(int len) {
+        while (limit - pos < len) {
+            if (eof) {
+                return false;
             }
-            if (!Character.isWhitespace(str.charAt(i))) {
-                return i + countTabs * 4;
+            fill(pos);
+        }
+
+        return true;
+    }
+
+    /**
+     * Reads more input into the buffer. Characters before {@code keep} and
+     * {@link #mark} are discarded and the rest are moved to the front of the
+     * buffer, which is only grown when nothing can be discarded and it is
+     * full. Sets {@link #eof} once the reader is exhausted.
+     *
+     * @param keep The index of the first character that must stay buffered.
+     * @return The number of positions the buffered characters moved towards the
+     *         front.
+     * @throws UncheckedIOException if reading from the underlying reader fails.
+     */
+    private int fill(int keep) {
+        if (mark >= 0 && mark < keep) {
+            keep = mark;
+        }
+        if (keep > 0) {
+            countLines(keep);
+            lineScan -= keep;
+            System.arraycopy(buf, keep, buf, 0, limit - keep);
+            base += keep;
+            limit -= keep;
+            pos -= keep;
+            tokenStart -= keep;
+            tokenEnd -= keep;
+            mark = mark >= 0 ? mark - keep : -1;
+        } else if (limit == buf.length) {
+            buf = Arrays.copyOf(buf, buf.length * 2);
+        }
+
+        try {
+            int read;
+            do {
+                read = reader.read(buf, limit, buf.length - limit);
+            } while (read == 0);
+
+            if (read < 0) {
+                eof = true;
+            } else {
+                limit += read;
             }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
 
-        return 0;
+        return keep;
     }
 }
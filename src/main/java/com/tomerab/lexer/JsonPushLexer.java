@@ -0,0 +1,343 @@
+package com.tomerab.lexer;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+
+import com.tomerab.lexer.JsonToken.JsonType;
+
+/**
+ * The JsonPushLexer class lexes input that arrives in parts, such as from a
+ * non-blocking channel. The parts are passed to {@link #feed(ByteBuffer)} as
+ * they arrive, and {@link #hasNext()} only returns true once the next token has
+ * arrived whole, so a token is never read before its last byte. Once
+ * {@link #endOfInput()} has been called, the lexer reads the rest of the input
+ * as {@link JsonByteLexer} would.
+ *
+ * The bytes are lexed by a {@link JsonByteLexer}, so tokens, errors and their
+ * positions are the same as if the input had arrived at once. Only the bytes
+ * from the current token on are kept. Since {@link #hasNext()} reads the next
+ * token ahead, the values of the current token must be read before calling it.
+ *
+ * <pre>
+ * JsonPushLexer lexer = new JsonPushLexer();
+ * lexer.feed(chunk);
+ * while (lexer.hasNext()) {
+ *     JsonType type = lexer.nextToken();
+ * }
+ * </pre>
+ */
+public final class JsonPushLexer implements JsonTokenizer {
+    // What the bytes of a token that has not arrived whole have been found
+    // to be so far, see tokenArrived() and containerArrived().
+    private static final int START = 0, STRING = 1, ESCAPE = 2, WORD = 3, DONE = 4;
+
+    private final FeedInput input = new FeedInput();
+    private final JsonByteLexer lexer = new JsonByteLexer(input);
+
+    private JsonType next; // The token read ahead by hasNext().
+    private boolean readAhead;
+    private boolean waiting; // The next token ran past the input that had arrived.
+    private boolean skipping; // The container being skipped ran past it.
+    // Offset up to which the bytes of that token or container have been
+    // checked, and what they have been found to be.
+    private long scanned;
+    private int scanState;
+    private int skipDepth;
+
+    /**
+     * Adds the remaining bytes of a buffer to the input. The bytes are copied,
+     * and the buffer's position is moved to its limit.
+     *
+     * @throws IllegalStateException if the end of the input has been reached.
+     */
+    public void feed(ByteBuffer chunk) {
+        if (input.ended) {
+            throw new IllegalStateException("Input fed after its end");
+        }
+        input.append(chunk);
+    }
+
+    /**
+     * Marks the end of the input, after which the last token is read even if
+     * more bytes could have continued it, such as the digits of a number.
+     */
+    public void endOfInput() {
+        input.ended = true;
+    }
+
+    /**
+     * @return Whether the end of the input has been marked.
+     */
+    public boolean isEnded() {
+        return input.ended;
+    }
+
+    /**
+     * Reads the next token ahead if it has arrived whole.
+     *
+     * @return Whether the next token has arrived whole. If it has not, more
+     *         input may still bring it unless the input has ended.
+     */
+    @Override
+    public boolean hasNext() {
+        skipping = false;
+        if (readAhead) {
+            return next != null;
+        }
+        if (waiting && !input.ended && !tokenArrived()) {
+            return false;
+        }
+
+        try {
+            if (!lexer.hasNext()) {
+                return false;
+            }
+        } catch (FeedInput.NeedMore e) {
+            return false; // Only whitespace has arrived.
+        }
+        try {
+            next = lexer.nextToken();
+        } catch (FeedInput.NeedMore e) {
+            // The token is read again once the rest of it has arrived, which
+            // is checked without lexing it again for every part.
+            lexer.rewind();
+            waiting = true;
+            scanned = lexer.tokenStart();
+            scanState = START;
+            return false;
+        }
+        waiting = false;
+        readAhead = true;
+        return next != null;
+    }
+
+    @Override
+    public JsonType nextToken() {
+        if (!readAhead && !hasNext()) {
+            return null;
+        }
+        readAhead = false;
+        return next;
+    }
+
+    /**
+     * Checks the bytes of the next token, from where the previous check
+     * stopped, for its end. Strings end with their closing quote, and numbers
+     * and literals with the first byte that cannot be part of them.
+     */
+    private boolean tokenArrived() {
+        long end = input.end();
+        for (; scanState != DONE && scanned < end; scanned++) {
+            byte b = input.byteAt(scanned);
+            switch (scanState) {
+                case START:
+                    scanState = b == '"' ? STRING : WORD;
+                    break;
+                case STRING:
+                    if (b == '\\') {
+                        scanState = ESCAPE;
+                    } else if (b == '"') {
+                        scanState = DONE;
+                    }
+                    break;
+                case ESCAPE:
+                    scanState = STRING;
+                    break;
+                default:
+                    if (isDelimiter(b)) {
+                        scanState = DONE;
+                    }
+                    break;
+            }
+        }
+        return scanState == DONE;
+    }
+
+    private static boolean isDelimiter(byte b) {
+        return JsonLexer.WHITESPACE[b & 0xFF] || b == '{' || b == '}' || b == '[' || b == ']' || b == ','
+                || b == ':' || b == '"';
+    }
+
+    @Override
+    public long tokenStart() {
+        return lexer.tokenStart();
+    }
+
+    @Override
+    public long tokenEnd() {
+        return lexer.tokenEnd();
+    }
+
+    @Override
+    public String stringValue() {
+        return lexer.stringValue();
+    }
+
+    @Override
+    public String stringValue(KeyCache keys) {
+        return lexer.stringValue(keys);
+    }
+
+    @Override
+    public String stringSource() {
+        return lexer.stringSource();
+    }
+
+    @Override
+    public boolean hasEscapes() {
+        return lexer.hasEscapes();
+    }
+
+    @Override
+    public boolean booleanValue() {
+        return lexer.booleanValue();
+    }
+
+    @Override
+    public boolean fitsLong() {
+        return lexer.fitsLong();
+    }
+
+    @Override
+    public long longValue() {
+        return lexer.longValue();
+    }
+
+    @Override
+    public BigInteger integerValue() {
+        return lexer.integerValue();
+    }
+
+    @Override
+    public BigDecimal decimalValue() {
+        return lexer.decimalValue();
+    }
+
+    @Override
+    public String numberText() {
+        return lexer.numberText();
+    }
+
+    @Override
+    public JsonLexer.Cursor getCursor() {
+        return lexer.getCursor();
+    }
+
+    /**
+     * Skips the container once it has arrived whole, as
+     * {@link JsonByteLexer#skipContainer()} does.
+     *
+     * @return The type of the closing bracket, or null if the container has
+     *         not arrived whole. If it has not, the opening bracket stays the
+     *         current token, so the skip can be tried again once more input
+     *         has arrived, unless the input has ended.
+     */
+    @Override
+    public JsonType skipContainer() {
+        if (readAhead || (next != JsonType.OBJ_OPEN && next != JsonType.ARR_OPEN)) {
+            throw new IllegalStateException("Not at the start of an object or array");
+        }
+        if (!input.ended && !containerArrived()) {
+            return null;
+        }
+        skipping = false;
+        return next = lexer.skipContainer();
+    }
+
+    /**
+     * Checks the bytes after the opening bracket of the current token, from
+     * where the previous check stopped, for the bracket that closes it.
+     */
+    private boolean containerArrived() {
+        if (!skipping) {
+            skipping = true;
+            scanned = lexer.tokenEnd();
+            scanState = START;
+            skipDepth = 1;
+        }
+        long end = input.end();
+        for (; skipDepth > 0 && scanned < end; scanned++) {
+            byte b = input.byteAt(scanned);
+            if (scanState == STRING) {
+                if (b == '\\') {
+                    scanState = ESCAPE;
+                } else if (b == '"') {
+                    scanState = START;
+                }
+            } else if (scanState == ESCAPE) {
+                scanState = STRING;
+            } else if (b == '"') {
+                scanState = STRING;
+            } else if (b == '{' || b == '[') {
+                skipDepth++;
+            } else if (b == '}' || b == ']') {
+                skipDepth--;
+            }
+        }
+        return skipDepth == 0;
+    }
+
+    /**
+     * Holds the bytes fed to the lexer that it has not dropped yet. Fed bytes
+     * are appended without moving the bytes the lexer is reading, which are
+     * only moved to the front when the lexer asks for its next window.
+     */
+    private static final class FeedInput implements JsonByteLexer.ByteInput {
+        private byte[] arr = new byte[8192];
+        private int size;
+        private long arrBase; // Offset of arr[0] in the input.
+        boolean ended;
+
+        void append(ByteBuffer chunk) {
+            int len = chunk.remaining();
+            if (arr.length - size < len) {
+                // The lexer may still read the current array, so a larger one
+                // replaces it rather than moving its bytes.
+                byte[] grown = new byte[Math.max(arr.length * 2, size + len)];
+                System.arraycopy(arr, 0, grown, 0, size);
+                arr = grown;
+            }
+            chunk.get(arr, size, len);
+            size += len;
+        }
+
+        long end() {
+            return arrBase + size;
+        }
+
+        byte byteAt(long offset) {
+            return arr[(int) (offset - arrBase)];
+        }
+
+        @Override
+        public ByteBuffer refill(long from, int buffered) {
+            int shift = (int) (from - arrBase);
+            if (shift + buffered == size) {
+                // Every byte fed so far is in the lexer's window.
+                if (ended) {
+                    return null;
+                }
+                throw NeedMore.INSTANCE;
+            }
+
+            if (shift > 0) {
+                System.arraycopy(arr, shift, arr, 0, size - shift);
+                size -= shift;
+                arrBase = from;
+            }
+            return ByteBuffer.wrap(arr).limit(size);
+        }
+
+        /**
+         * Thrown through the lexer when it needs bytes that have not arrived.
+         */
+        static final class NeedMore extends RuntimeException {
+            static final NeedMore INSTANCE = new NeedMore();
+
+            private NeedMore() {
+                super(null, null, false, false);
+            }
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.tomerab.lexer;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+import com.tomerab.lexer.JsonToken.JsonType;
+
+/**
+ * The JsonReader class is a pull parser over a {@link JsonTokenizer}. It moves
+ * from token to token without allocating anything; the value of the current
+ * token is only decoded when one of the value accessors asks for it.
+ *
+ * <pre>
+ * JsonReader reader = new JsonReader(new JsonByteLexer(bytes));
+ * long sum = 0;
+ * for (JsonType type = reader.nextToken(); type != null; type = reader.nextToken()) {
+ *     if (type == JsonType.NUMBER_INTEGER) {
+ *         sum += reader.longValue();
+ *     }
+ * }
+ * </pre>
+ *
+ * The accessors are valid until the next call to {@link #nextToken()} or
+ * {@link #skipValue()}.
+ */
+public class JsonReader {
+    private final JsonTokenizer tokenizer;
+    private JsonType current;
+
+    public JsonReader(JsonTokenizer tokenizer) {
+        this.tokenizer = tokenizer;
+    }
+
+    public boolean hasNext() {
+        return tokenizer.hasNext();
+    }
+
+    /**
+     * Advances to the next token.
+     *
+     * @return The type of the token, or null at the end of the input.
+     * @throws IllegalArgumentException if the input is not a valid token.
+     */
+    public JsonType nextToken() {
+        return current = tokenizer.nextToken();
+    }
+
+    /**
+     * @return The type of the current token, or null before the first token and
+     *         at the end of the input.
+     */
+    public JsonType currentToken() {
+        return current;
+    }
+
+    public String stringValue() {
+        return tokenizer.stringValue();
+    }
+
+    /**
+     * @return The text of the current string between its quotes, with its
+     *         escapes left as they are.
+     */
+    public String stringSource() {
+        return tokenizer.stringSource();
+    }
+
+    /**
+     * @return Whether the current string has escapes, tabs or newlines.
+     */
+    public boolean hasEscapes() {
+        return tokenizer.hasEscapes();
+    }
+
+    /**
+     * Decodes the current string through a cache of object keys.
+     *
+     * @see KeyCache
+     */
+    public String stringValue(KeyCache keys) {
+        return tokenizer.stringValue(keys);
+    }
+
+    public boolean booleanValue() {
+        return tokenizer.booleanValue();
+    }
+
+    /**
+     * @return Whether the current token is an integer that {@link #longValue()}
+     *         can parse without overflow checks.
+     */
+    public boolean fitsLong() {
+        return tokenizer.fitsLong();
+    }
+
+    /**
+     * @throws ArithmeticException if the value does not fit in a long.
+     */
+    public long longValue() {
+        return tokenizer.longValue();
+    }
+
+    public BigInteger integerValue() {
+        return tokenizer.integerValue();
+    }
+
+    public BigDecimal decimalValue() {
+        return tokenizer.decimalValue();
+    }
+
+    /**
+     * @return The source text of the current number token.
+     */
+    public String numberText() {
+        return tokenizer.numberText();
+    }
+
+    /**
+     * @return The offset of the first character of the current token.
+     */
+    public long tokenStart() {
+        return tokenizer.tokenStart();
+    }
+
+    /**
+     * @return The offset one past the last character of the current token.
+     */
+    public long tokenEnd() {
+        return tokenizer.tokenEnd();
+    }
+
+    public JsonLexer.Cursor getCursor() {
+        return tokenizer.getCursor();
+    }
+
+    /**
+     * Skips the rest of the object or array that the current token opens,
+     * without reading its tokens.
+     *
+     * @see JsonTokenizer#skipContainer()
+     */
+    public JsonType skipContainer() {
+        return current = tokenizer.skipContainer();
+    }
+
+    /**
+     * Skips the value that starts at the current token. If the current token
+     * opens an object or an array, every token up to and including the one
+     * that closes it is skipped; other tokens are values by themselves.
+     *
+     * @return The type of the last token skipped, or null if the input ended
+     *         before the value did.
+     */
+    public JsonType skipValue() {
+        int depth = 0;
+        JsonType type = current;
+
+        while (type != null) {
+            switch (type) {
+                case OBJ_OPEN, ARR_OPEN -> depth++;
+                case OBJ_CLOSE, ARR_CLOSE -> depth--;
+                default -> {
+                }
+            }
+            if (depth <= 0) {
+                return type;
+            }
+            type = nextToken();
+        }
+
+        return null;
+    }
+}
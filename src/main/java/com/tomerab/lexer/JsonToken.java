@@ -5,13 +5,22 @@ import java.math.BigInteger;
 
 /**
  * Represents a token in a JSON document.
+ *
+ * Integers of up to 18 digits are held as a long. Other numbers produced by a
+ * lexer keep their source text, and are only converted to a BigInteger or
+ * BigDecimal when one is asked for, and strings with escapes are only decoded
+ * when their value is asked for.
  */
 public class JsonToken {
     private boolean boolVal;
     private String stringVal;
+    private String stringSource; // Source text of a string that has not been decoded yet.
     private BigDecimal decimal;
     private BigInteger integer;
+    private long longVal;
+    private String numberText; // Source text of a number that is not held as a long.
     private final JsonType type;
+    private long start = -1, end = -1;
 
     public enum JsonType {
         OBJ_OPEN,
@@ -51,11 +60,49 @@ public class JsonToken {
         type = JsonType.NUMBER_INTEGER;
     }
 
+    public JsonToken(long longVal) {
+        this.longVal = longVal;
+        type = JsonType.NUMBER_INTEGER;
+    }
+
+    /**
+     * Creates a string token from its text between the quotes, which is only
+     * decoded if it has escapes and {@link #getString()} is called.
+     */
+    JsonToken(String source, boolean escaped) {
+        if (escaped) {
+            this.stringSource = source;
+        } else {
+            this.stringVal = source;
+        }
+        type = JsonType.STRING;
+    }
+
+    /**
+     * Creates a number token from its source text.
+     */
+    JsonToken(JsonType type, String numberText) {
+        this.numberText = numberText;
+        this.type = type;
+    }
+
+    /**
+     * Records where this token was found in the lexer input.
+     */
+    JsonToken at(long start, long end) {
+        this.start = start;
+        this.end = end;
+        return this;
+    }
+
     public JsonType getType() {
         return type;
     }
 
     public String getString() {
+        if (stringVal == null && stringSource != null) {
+            stringVal = JsonLexer.unescape(stringSource);
+        }
         return stringVal;
     }
 
@@ -64,26 +111,69 @@ public class JsonToken {
     }
 
     public BigDecimal getDecimal() {
+        if (decimal == null && numberText != null) {
+            decimal = new BigDecimal(numberText);
+        }
         return decimal;
     }
 
     public BigInteger getInteger() {
+        if (integer == null && type == JsonType.NUMBER_INTEGER) {
+            integer = numberText != null ? new BigInteger(numberText) : BigInteger.valueOf(longVal);
+        }
         return integer;
     }
 
+    /**
+     * @return Whether this is an integer token held as a long.
+     */
+    public boolean isLong() {
+        return type == JsonType.NUMBER_INTEGER && integer == null && numberText == null;
+    }
+
+    public long getLong() {
+        return isLong() ? longVal : getInteger().longValueExact();
+    }
+
+    /**
+     * @return The number as it was written in the input, for number tokens.
+     */
+    public String getNumberText() {
+        if (numberText != null) {
+            return numberText;
+        }
+        if (type == JsonType.NUMBER_DECIMAL) {
+            return decimal.toString();
+        }
+        return isLong() ? Long.toString(longVal) : integer.toString();
+    }
+
+    /**
+     * @return The offset of the first character of this token in the lexer
+     *         input, or -1 if the token was not produced by a lexer.
+     */
+    public long getStart() {
+        return start;
+    }
+
+    /**
+     * @return The offset one past the last character of this token in the lexer
+     *         input, or -1 if the token was not produced by a lexer.
+     */
+    public long getEnd() {
+        return end;
+    }
+
     @Override
     public String toString() {
         String res = "[" + type.name() + "]";
 
         switch (type) {
             case STRING -> {
-                return res + ": " + stringVal;
-            }
-            case NUMBER_DECIMAL -> {
-                return res + ": " + decimal;
+                return res + ": " + getString();
             }
-            case NUMBER_INTEGER -> {
-                return res + ": " + integer;
+            case NUMBER_DECIMAL, NUMBER_INTEGER -> {
+                return res + ": " + getNumberText();
             }
             case BOOLEAN -> {
                 return res + ": " + boolVal;
@@ -0,0 +1,145 @@
+package com.tomerab.lexer;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+import com.tomerab.lexer.JsonToken.JsonType;
+
+/**
+ * A source of JSON tokens, implemented by the character based
+ * {@link JsonLexer} and the UTF-8 byte based {@link JsonByteLexer}.
+ *
+ * Tokens can be consumed in two ways: {@link #next()} returns each token as a
+ * {@link JsonToken}, while {@link #nextToken()} only moves to the next token
+ * and leaves its value in the input until one of the value accessors is
+ * called. The accessors describe the current token and are valid until the
+ * next call to {@link #nextToken()} or {@link #next()}. Strings returned by
+ * {@link #next()} are not decoded until {@link JsonToken#getString()} is
+ * called.
+ */
+public interface JsonTokenizer {
+    /**
+     * @return Whether there are more tokens before the end of the input.
+     */
+    public boolean hasNext();
+
+    /**
+     * Advances to the next token without materializing its value.
+     *
+     * @return The type of the next token, or null if only whitespace remains.
+     * @throws IllegalArgumentException if the input is not a valid token.
+     */
+    public JsonType nextToken();
+
+    /**
+     * @return The offset of the first character of the current token.
+     */
+    public long tokenStart();
+
+    /**
+     * @return The offset one past the last character of the current token.
+     */
+    public long tokenEnd();
+
+    /**
+     * Decodes the current {@link JsonType#STRING} token.
+     */
+    public String stringValue();
+
+    /**
+     * @return The text of the current {@link JsonType#STRING} token between its
+     *         quotes, with its escapes left as they are.
+     */
+    public String stringSource();
+
+    /**
+     * @return Whether the current {@link JsonType#STRING} token has escapes,
+     *         tabs or newlines, i.e. whether its value differs from
+     *         {@link #stringSource()}.
+     */
+    public boolean hasEscapes();
+
+    /**
+     * Decodes the current {@link JsonType#STRING} token through a cache of
+     * object keys, reusing the cached String if the key has been seen before.
+     */
+    public default String stringValue(KeyCache keys) {
+        return keys.intern(stringValue());
+    }
+
+    /**
+     * @return The value of the current {@link JsonType#BOOLEAN} token.
+     */
+    public boolean booleanValue();
+
+    /**
+     * @return Whether the current token is a {@link JsonType#NUMBER_INTEGER} of
+     *         at most 18 digits, which {@link #longValue()} parses without
+     *         overflow checks.
+     */
+    public boolean fitsLong();
+
+    /**
+     * @return The value of the current {@link JsonType#NUMBER_INTEGER} token.
+     * @throws ArithmeticException if the value does not fit in a long.
+     */
+    public long longValue();
+
+    /**
+     * @return The value of the current {@link JsonType#NUMBER_INTEGER} token.
+     */
+    public BigInteger integerValue();
+
+    /**
+     * @return The value of the current {@link JsonType#NUMBER_DECIMAL} or
+     *         {@link JsonType#NUMBER_INTEGER} token.
+     */
+    public BigDecimal decimalValue();
+
+    /**
+     * @return The source text of the current number token.
+     */
+    public String numberText();
+
+    /**
+     * @return The position of the tokenizer in the input.
+     */
+    public JsonLexer.Cursor getCursor();
+
+    /**
+     * Skips the rest of the object or array that the current token opens by
+     * matching brackets and quotes, without reading its tokens or checking its
+     * contents. The skipped container then is the current token:
+     * {@link #tokenStart()} is the offset of its opening bracket and
+     * {@link #tokenEnd()} is one past its closing bracket.
+     *
+     * @return The type of the closing bracket, or null if the input ended
+     *         before the container did.
+     * @throws IllegalStateException if the current token is not '{' or '['.
+     */
+    public JsonType skipContainer();
+
+    /**
+     * Advances to the next token and returns it.
+     *
+     * @return The next token, or null if only whitespace remains.
+     * @throws IllegalArgumentException if the input is not a valid token.
+     */
+    public default JsonToken next() {
+        JsonType type = nextToken();
+        if (type == null) {
+            return null;
+        }
+
+        JsonToken token;
+        switch (type) {
+            case STRING -> token = new JsonToken(stringSource(), hasEscapes());
+            case NUMBER_INTEGER -> token = fitsLong() ? new JsonToken(longValue()) : new JsonToken(type, numberText());
+            case NUMBER_DECIMAL -> token = new JsonToken(type, numberText());
+            case BOOLEAN -> token = new JsonToken(booleanValue());
+            default -> token = new JsonToken(type);
+        }
+
+        return token.at(tokenStart(), tokenEnd());
+    }
+}
@@ -0,0 +1,176 @@
+package com.tomerab.lexer;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * The KeyCache class keeps one String per distinct object key, so that the
+ * keys of an array of similar records share their Strings instead of each
+ * record allocating its own.
+ *
+ * Keys without escapes are looked up by hashing the characters or bytes of the
+ * input directly, so a key that is already cached is returned without
+ * creating a String at all. The cache is bounded: once it holds
+ * {@code capacity} keys, new keys are returned without being cached.
+ *
+ * <pre>
+ * KeyCache keys = new KeyCache(4096);
+ * JsonParser parser = new JsonParser(lexer, keys);
+ * </pre>
+ */
+public final class KeyCache {
+    public static final int DEFAULT_CAPACITY = 1024;
+    private static final int MAX_KEY_LENGTH = 64; // Longer strings are rarely keys worth sharing.
+
+    private final String[] keys;
+    private final int[] hashes;
+    private final int capacity;
+    private int size;
+
+    public KeyCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity The number of distinct keys to keep.
+     */
+    public KeyCache(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        // Keep the table at most half full, so that probe sequences stay short.
+        int tableSize = Integer.highestOneBit(Math.min(capacity, 1 << 29) * 2 - 1) << 1;
+        this.keys = new String[tableSize];
+        this.hashes = new int[tableSize];
+        this.capacity = capacity;
+    }
+
+    /**
+     * @return The number of keys in the cache.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Removes every key from the cache.
+     */
+    public void clear() {
+        Arrays.fill(keys, null);
+        size = 0;
+    }
+
+    /**
+     * @return The cached String equal to {@code key}, caching {@code key} if
+     *         there is none and the cache is not full.
+     */
+    public String intern(String key) {
+        if (key.length() > MAX_KEY_LENGTH) {
+            return key;
+        }
+
+        int hash = key.hashCode();
+        int mask = keys.length - 1;
+        int i = hash & mask;
+        for (String cached = keys[i]; cached != null; cached = keys[i]) {
+            if (hashes[i] == hash && cached.equals(key)) {
+                return cached;
+            }
+            i = (i + 1) & mask;
+        }
+
+        return add(i, hash, key);
+    }
+
+    /**
+     * Looks up the key made of the characters in {@code [from, to)}.
+     *
+     * @return The cached String, or a new one.
+     */
+    String intern(char[] buf, int from, int to) {
+        int len = to - from;
+        if (len > MAX_KEY_LENGTH) {
+            return new String(buf, from, len);
+        }
+
+        int hash = 0;
+        for (int j = from; j < to; j++) {
+            hash = 31 * hash + buf[j];
+        }
+
+        int mask = keys.length - 1;
+        int i = hash & mask;
+        for (String cached = keys[i]; cached != null; cached = keys[i]) {
+            if (hashes[i] == hash && matches(cached, buf, from, len)) {
+                return cached;
+            }
+            i = (i + 1) & mask;
+        }
+
+        return add(i, hash, new String(buf, from, len));
+    }
+
+    /**
+     * Looks up the key made of the ASCII bytes in {@code [from, to)}.
+     *
+     * @return The cached String, or null if it is not cached; the caller
+     *         decodes the key and passes it to {@link #intern(String)}.
+     */
+    String find(ByteBuffer buf, int from, int to) {
+        int len = to - from;
+        if (len > MAX_KEY_LENGTH) {
+            return null;
+        }
+
+        // The same hash as String.hashCode(), since every byte is a character.
+        int hash = 0;
+        for (int j = from; j < to; j++) {
+            hash = 31 * hash + buf.get(j);
+        }
+
+        int mask = keys.length - 1;
+        for (int i = hash & mask; keys[i] != null; i = (i + 1) & mask) {
+            if (hashes[i] == hash && matches(keys[i], buf, from, len)) {
+                return keys[i];
+            }
+        }
+
+        return null;
+    }
+
+    private String add(int slot, int hash, String key) {
+        if (size < capacity) {
+            keys[slot] = key;
+            hashes[slot] = hash;
+            size++;
+        }
+
+        return key;
+    }
+
+    private static boolean matches(String key, char[] buf, int from, int len) {
+        if (key.length() != len) {
+            return false;
+        }
+        for (int j = 0; j < len; j++) {
+            if (key.charAt(j) != buf[from + j]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static boolean matches(String key, ByteBuffer buf, int from, int len) {
+        if (key.length() != len) {
+            return false;
+        }
+        for (int j = 0; j < len; j++) {
+            if (key.charAt(j) != buf.get(from + j)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+}
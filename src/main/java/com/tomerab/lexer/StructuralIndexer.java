@@ -0,0 +1,184 @@
+package com.tomerab.lexer;
+
+import java.nio.ByteBuffer;
+import java.util.Optional;
+
+/**
+ * The first stage of the byte lexer's structural index, in the spirit of
+ * simdjson. The input is classified 64 bytes at a time into bitmasks of
+ * quotes, backslashes, operators ({@code {}[]:,}) and whitespace, and the
+ * masks are combined without branching into the offsets of:
+ *
+ * <ul>
+ * <li>every quote that is not escaped, opening and closing,</li>
+ * <li>every operator outside of a string,</li>
+ * <li>every other byte outside of a string that follows whitespace, an
+ * operator or a quote, i.e. the first byte of a number or literal.</li>
+ * </ul>
+ *
+ * The second stage, {@link JsonByteLexer}, jumps from one offset to the next
+ * instead of looking at whitespace and string contents byte by byte.
+ *
+ * This class classifies bytes one by one; {@link #create(boolean)} returns a
+ * subclass that uses the Vector API when the {@code jdk.incubator.vector}
+ * module is available. Both produce the same offsets for the same input.
+ */
+class StructuralIndexer {
+    static final int BLOCK_SIZE = 64;
+
+    private static final long EVEN_BITS = 0x5555555555555555L;
+    private static final long ODD_BITS = ~EVEN_BITS;
+
+    // The masks of the block being indexed, set by classify().
+    long quoteBits, backslashBits, operatorBits, whitespaceBits;
+
+    // State carried from one block to the next.
+    private long prevEndsOddBackslash; // 1 if the last block ended in an odd run of backslashes.
+    private long prevInString; // All ones if the last block ended inside a string.
+    private long prevScalar; // 1 if the last byte of the last block was part of a scalar.
+
+    /**
+     * @param vectorized Whether to classify bytes with the Vector API.
+     * @return An indexer that uses the Vector API if asked to and the
+     *         {@code jdk.incubator.vector} module is available, and classifies
+     *         bytes one by one otherwise.
+     */
+    static StructuralIndexer create(boolean vectorized) {
+        if (vectorized && vectorApiAvailable()) {
+            return new VectorStructuralIndexer();
+        }
+        return new StructuralIndexer();
+    }
+
+    static boolean vectorApiAvailable() {
+        Optional<Module> module = ModuleLayer.boot().findModule("jdk.incubator.vector");
+        return module.isPresent();
+    }
+
+    /**
+     * Forgets the state carried between blocks, so that indexing can start
+     * again at a byte that is outside of any string.
+     */
+    void reset() {
+        prevEndsOddBackslash = 0;
+        prevInString = 0;
+        prevScalar = 0;
+    }
+
+    /**
+     * Indexes {@code [from, to)}, continuing from the state left by the last
+     * call. A range that does not end on a block boundary has to be the last
+     * one before {@link #reset()}.
+     *
+     * @param out Receives the offsets; must hold {@code to - from} of them.
+     * @return The number of offsets written to {@code out}.
+     */
+    final int index(ByteBuffer buf, int from, int to, int[] out) {
+        int count = 0;
+
+        for (int at = from; at < to; at += BLOCK_SIZE) {
+            int len = to - at;
+            long valid = -1L;
+            if (len >= BLOCK_SIZE) {
+                classify(buf, at);
+            } else {
+                classifyScalar(buf, at, len);
+                valid = (1L << len) - 1;
+            }
+            count = emit(at, valid, out, count);
+        }
+
+        return count;
+    }
+
+    /**
+     * Sets the masks from the {@link #BLOCK_SIZE} bytes at {@code at}.
+     */
+    void classify(ByteBuffer buf, int at) {
+        classifyScalar(buf, at, BLOCK_SIZE);
+    }
+
+    /**
+     * Sets the masks from the {@code len} bytes at {@code at}; the rest of the
+     * block is treated as whitespace.
+     */
+    final void classifyScalar(ByteBuffer buf, int at, int len) {
+        long quote = 0, backslash = 0, operator = 0, whitespace = len < BLOCK_SIZE ? -1L << len : 0;
+
+        for (int i = 0; i < len; i++) {
+            long bit = 1L << i;
+            switch (buf.get(at + i)) {
+                case '"' -> quote |= bit;
+                case '\\' -> backslash |= bit;
+                case '{', '}', '[', ']', ':', ',' -> operator |= bit;
+                case ' ', '\t', '\n', '\r', 0x0B, '\f' -> whitespace |= bit;
+                default -> {
+                }
+            }
+        }
+
+        quoteBits = quote;
+        backslashBits = backslash;
+        operatorBits = operator;
+        whitespaceBits = whitespace;
+    }
+
+    private int emit(int at, long valid, int[] out, int count) {
+        long quotes = quoteBits & ~escapedBits(backslashBits);
+        long inString = prefixXor(quotes) ^ prevInString; // Opening quotes are inside, closing ones are not.
+        prevInString = inString >> 63;
+
+        long scalar = ~(whitespaceBits | operatorBits | quoteBits);
+        long scalarStarts = scalar & ~((scalar << 1) | prevScalar);
+        prevScalar = scalar >>> 63;
+
+        long structurals = (((operatorBits | scalarStarts) & ~inString) | quotes) & valid;
+        while (structurals != 0) {
+            out[count++] = at + Long.numberOfTrailingZeros(structurals);
+            structurals &= structurals - 1;
+        }
+
+        return count;
+    }
+
+    /**
+     * @return The mask of the bytes that follow an odd number of backslashes.
+     */
+    private long escapedBits(long backslash) {
+        if (backslash == 0 && prevEndsOddBackslash == 0) {
+            return 0;
+        }
+
+        // Each run of backslashes is added to its first bit, so that the carry
+        // ends one past the run; whether the run had odd length follows from
+        // the parity of its start and end.
+        long startEdges = backslash & ~(backslash << 1);
+        long evenStartMask = EVEN_BITS ^ prevEndsOddBackslash;
+        long evenStarts = startEdges & evenStartMask;
+        long oddStarts = startEdges & ~evenStartMask;
+
+        long evenCarries = backslash + evenStarts;
+        long oddCarries = backslash + oddStarts;
+        boolean endsOddBackslash = Long.compareUnsigned(oddCarries, backslash) < 0;
+        oddCarries |= prevEndsOddBackslash;
+        prevEndsOddBackslash = endsOddBackslash ? 1 : 0;
+
+        long evenCarryEnds = evenCarries & ~backslash;
+        long oddCarryEnds = oddCarries & ~backslash;
+        return (evenCarryEnds & ODD_BITS) | (oddCarryEnds & EVEN_BITS);
+    }
+
+    /**
+     * @return The mask whose bit i is the xor of the bits up to and including
+     *         bit i of {@code bits}.
+     */
+    private static long prefixXor(long bits) {
+        bits ^= bits << 1;
+        bits ^= bits << 2;
+        bits ^= bits << 4;
+        bits ^= bits << 8;
+        bits ^= bits << 16;
+        bits ^= bits << 32;
+        return bits;
+    }
+}
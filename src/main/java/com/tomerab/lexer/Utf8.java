@@ -0,0 +1,123 @@
+package com.tomerab.lexer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * UTF-8 helpers for the byte based lexer. ASCII runs are checked eight bytes at
+ * a time, only the bytes of multi-byte sequences are looked at one by one.
+ */
+final class Utf8 {
+    private static final long NON_ASCII_MASK = 0x8080808080808080L;
+    private static final long ONES = 0x0101010101010101L;
+
+    private Utf8() {
+    }
+
+    /**
+     * @return The index of the first non-ASCII byte in {@code [from, to)}, or
+     *         {@code to} if there is none.
+     */
+    static int skipAscii(ByteBuffer buf, int from, int to) {
+        int i = from;
+        while (i + Long.BYTES <= to && (buf.getLong(i) & NON_ASCII_MASK) == 0) {
+            i += Long.BYTES;
+        }
+        while (i < to && buf.get(i) >= 0) {
+            i++;
+        }
+
+        return i;
+    }
+
+    /**
+     * @return The index of the first byte in {@code [from, to)} that is
+     *         non-ASCII, a backslash, a newline or a tab, i.e. the first byte a
+     *         string cannot be copied out verbatim past, or {@code to} if there
+     *         is none.
+     */
+    static int skipPlain(ByteBuffer buf, int from, int to) {
+        int i = from;
+        while (i + Long.BYTES <= to) {
+            long word = buf.getLong(i);
+            if (((word | hasByte(word, '\\') | hasByte(word, '\n') | hasByte(word, '\t')) & NON_ASCII_MASK) != 0) {
+                break;
+            }
+            i += Long.BYTES;
+        }
+        for (; i < to; i++) {
+            byte b = buf.get(i);
+            if (b < 0 || b == '\\' || b == '\n' || b == '\t') {
+                break;
+            }
+        }
+
+        return i;
+    }
+
+    /**
+     * @return A word with the high bit of a byte set if {@code word} has a byte
+     *         equal to {@code value} (assuming no byte of {@code word} has its
+     *         high bit set).
+     */
+    private static long hasByte(long word, char value) {
+        long x = word ^ (ONES * value);
+        return (x - ONES) & ~x;
+    }
+
+    /**
+     * Checks that {@code [from, to)} is well-formed UTF-8, rejecting overlong
+     * encodings, surrogates and code points past U+10FFFF.
+     *
+     * @return The index of the first byte of the first malformed sequence, or -1
+     *         if the range is valid.
+     */
+    static int validate(ByteBuffer buf, int from, int to) {
+        int i = skipAscii(buf, from, to);
+
+        while (i < to) {
+            int lead = buf.get(i) & 0xFF;
+            if (lead < 0x80) {
+                i = skipAscii(buf, i, to);
+                continue;
+            }
+
+            int continuations;
+            int lo = 0x80, hi = 0xBF; // Bounds of the second byte.
+            if (lead >= 0xC2 && lead <= 0xDF) {
+                continuations = 1;
+            } else if (lead >= 0xE0 && lead <= 0xEF) {
+                continuations = 2;
+                if (lead == 0xE0) {
+                    lo = 0xA0;
+                } else if (lead == 0xED) {
+                    hi = 0x9F;
+                }
+            } else if (lead >= 0xF0 && lead <= 0xF4) {
+                continuations = 3;
+                if (lead == 0xF0) {
+                    lo = 0x90;
+                } else if (lead == 0xF4) {
+                    hi = 0x8F;
+                }
+            } else {
+                return i;
+            }
+
+            if (i + continuations >= to) {
+                return i;
+            }
+            int second = buf.get(i + 1) & 0xFF;
+            if (second < lo || second > hi) {
+                return i;
+            }
+            for (int k = 2; k <= continuations; k++) {
+                if ((buf.get(i + k) & 0xC0) != 0x80) {
+                    return i;
+                }
+            }
+            i += continuations + 1;
+        }
+
+        return -1;
+    }
+}
@@ -0,0 +1,71 @@
+package com.tomerab.lexer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * A {@link StructuralIndexer} that classifies each block with the Vector API,
+ * comparing as many bytes at once as the hardware allows. Only loaded when the
+ * {@code jdk.incubator.vector} module is present.
+ */
+final class VectorStructuralIndexer extends StructuralIndexer {
+    private static final VectorSpecies<Byte> BYTES = ByteVector.SPECIES_PREFERRED.length() <= BLOCK_SIZE
+            ? ByteVector.SPECIES_PREFERRED
+            : ByteVector.SPECIES_512;
+    private static final VectorSpecies<Long> LONGS = VectorSpecies.of(long.class,
+            VectorShape.forBitSize(BYTES.vectorBitSize()));
+
+    // Moves the low bit of each of the eight bytes of a long into its top byte.
+    private static final long GATHER_BITS = 0x0102040810204080L;
+    private static final LongVector LANE_SHIFTS = LongVector.zero(LONGS).addIndex(Byte.SIZE);
+    private static final ByteVector ZERO = ByteVector.zero(BYTES);
+    private static final ByteVector ONE = ByteVector.broadcast(BYTES, (byte) 1);
+
+    @Override
+    void classify(ByteBuffer buf, int at) {
+        long quote = 0, backslash = 0, operator = 0, whitespace = 0;
+
+        for (int i = 0; i < BLOCK_SIZE; i += BYTES.length()) {
+            ByteVector bytes = ByteVector.fromByteBuffer(BYTES, buf, at + i, ByteOrder.LITTLE_ENDIAN);
+            // '[' and ']' are '{' and '}' without the 0x20 bit.
+            ByteVector folded = bytes.or((byte) 0x20);
+
+            quote |= bits(bytes.eq((byte) '"')) << i;
+            backslash |= bits(bytes.eq((byte) '\\')) << i;
+            operator |= bits(folded.eq((byte) '{')
+                    .or(folded.eq((byte) '}'))
+                    .or(bytes.eq((byte) ':'))
+                    .or(bytes.eq((byte) ','))) << i;
+            // '\t', '\n', 0x0B, '\f' and '\r' are 9 to 13.
+            whitespace |= bits(bytes.eq((byte) ' ')
+                    .or(bytes.compare(VectorOperators.GE, (byte) '\t').and(bytes.compare(VectorOperators.LE, (byte) '\r'))))
+                    << i;
+        }
+
+        quoteBits = quote;
+        backslashBits = backslash;
+        operatorBits = operator;
+        whitespaceBits = whitespace;
+    }
+
+    /**
+     * Equivalent to {@link VectorMask#toLong()}, which is not compiled to a
+     * single instruction before JDK 19: each long lane gathers the bits of its
+     * eight bytes with a multiplication, and the lanes are then or-ed together.
+     */
+    private static long bits(VectorMask<Byte> mask) {
+        return ZERO.blend(ONE, mask)
+                .reinterpretAsLongs()
+                .mul(GATHER_BITS)
+                .lanewise(VectorOperators.LSHR, 56)
+                .lanewise(VectorOperators.LSHL, LANE_SHIFTS)
+                .reduceLanes(VectorOperators.OR);
+    }
+}
@@ -1,16 +1,26 @@
 package com.tomerab.main;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 
 import com.tomerab.ast.JsonObject;
 import com.tomerab.exceptions.JsonSyntaxErrorException;
-import com.tomerab.lexer.JsonLexer;
+import com.tomerab.lexer.JsonByteLexer;
+import com.tomerab.lexer.JsonTokenizer;
 import com.tomerab.parser.JsonParser;
+import com.tomerab.tape.JsonTape;
+import com.tomerab.visitor.ChannelSink;
+import com.tomerab.visitor.JsonCompactPrinter;
 import com.tomerab.visitor.JsonPrettyPrintVisitor;
+import com.tomerab.visitor.JsonStreamPrettyPrinter;
+import com.tomerab.visitor.JsonTapePrettyPrinter;
 import com.tomerab.visitor.JsonVisitor;
-
-import java.io.IOException;
+import com.tomerab.visitor.OutputSink;
 
 public class Main {
   // Todo(tomer): Add more tests, also refine the cli interface, maybe add a
@@ -21,31 +31,95 @@ public class Main {
   // Todo(tomer): etc.
 
   public static void main(String[] args) {
-    try {
-      BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
-      StringBuilder inputBuilder = new StringBuilder();
-      String line;
-
-      while ((line = reader.readLine()) != null) {
-        inputBuilder.append(line).append("\n");
+    boolean simd = false;
+    boolean tape = false;
+    boolean stream = false;
+    boolean compact = false;
+    String file = null;
+    for (String arg : args) {
+      if (arg.equals("--simd")) {
+        simd = true;
+      } else if (arg.equals("--tape")) {
+        tape = true;
+      } else if (arg.equals("--stream")) {
+        stream = true;
+      } else if (arg.equals("--compact")) {
+        compact = true;
+      } else if (file == null) {
+        file = arg;
       }
+    }
 
-      String jsonInput = inputBuilder.toString();
-
-      JsonLexer jsonLexer = new JsonLexer(jsonInput);
-      JsonParser jsonParser = new JsonParser(jsonLexer);
-      JsonObject obj = jsonParser.parse();
-      JsonVisitor visitor = new JsonPrettyPrintVisitor(4);
-
-      obj.accept(visitor);
-
-      System.out.println();
+    // Write UTF-8 straight to the file descriptor rather than through
+    // System.out. The sink is closed, flushing what was printed before an
+    // error, before the error is reported.
+    try (ChannelSink out = new ChannelSink(new FileOutputStream(FileDescriptor.out).getChannel())) {
+      if (file != null) {
+        // Map the file rather than reading it, so the page cache does the I/O.
+        try (FileChannel channel = FileChannel.open(Path.of(file), StandardOpenOption.READ)) {
+          print(lexer(new JsonByteLexer(channel), simd), tape, stream, compact, out);
+        }
+      } else {
+        print(lexer(new JsonByteLexer(System.in), simd), tape, stream, compact, out);
+      }
     } catch (IllegalArgumentException e) {
       System.out.println("IllegalArguemntException: " + e.getMessage());
     } catch (JsonSyntaxErrorException e) {
       System.out.println("JsonSyntaxError: " + e.getMessage());
+    } catch (UncheckedIOException e) {
+      System.out.println("IOException: " + e.getCause().getMessage());
     } catch (IOException e) {
       System.out.println("IOException: " + e.getMessage());
     }
   }
+
+  private static JsonByteLexer lexer(JsonByteLexer lexer, boolean simd) {
+    if (simd) {
+      lexer.enableStructuralIndex(true);
+    }
+    return lexer;
+  }
+
+  private static void print(JsonByteLexer jsonLexer, boolean tape, boolean stream, boolean compact,
+      ChannelSink out) {
+    if (compact) {
+      // Copy each document of the input without its whitespace. Input
+      // without any reports the same error as the other modes.
+      JsonCompactPrinter printer = new JsonCompactPrinter(out);
+      do {
+        printer.print(jsonLexer);
+        out.write('\n');
+        out.flush();
+      } while (jsonLexer.hasNext());
+      return;
+    }
+    prettyPrint(jsonLexer, tape, stream, out);
+  }
+
+  private static void prettyPrint(JsonTokenizer jsonLexer, boolean tape, boolean stream, OutputSink out) {
+    if (stream) {
+      // Print each document of the input as it arrives, without a tree.
+      // Input without any reports the same error as the other modes.
+      JsonStreamPrettyPrinter printer = new JsonStreamPrettyPrinter(4, out);
+      do {
+        printer.print(jsonLexer);
+        out.write('\n');
+        out.flush();
+      } while (jsonLexer.hasNext());
+      return;
+    }
+    if (tape) {
+      new JsonTapePrettyPrinter(4, out).print(JsonTape.parse(jsonLexer));
+      out.write('\n');
+      return;
+    }
+
+    JsonParser jsonParser = new JsonParser(jsonLexer);
+    JsonObject obj = jsonParser.parse();
+    JsonVisitor visitor = new JsonPrettyPrintVisitor(4, out);
+
+    obj.accept(visitor);
+
+    out.write('\n');
+  }
 }
@@ -0,0 +1,229 @@
+package com.tomerab.parser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.tomerab.ast.JsonArray;
+import com.tomerab.ast.JsonDecimal;
+import com.tomerab.ast.JsonDoubleArray;
+import com.tomerab.ast.JsonInteger;
+import com.tomerab.ast.JsonLongArray;
+import com.tomerab.ast.JsonObject;
+
+/**
+ * Collects the elements of an array for {@link TreeBuilder}. Numbers are kept
+ * in primitive buffers for as long as every element fits them, so that numeric
+ * arrays become a {@link JsonLongArray} or {@link JsonDoubleArray}. The first
+ * element that does not fit turns the elements collected so far into nodes,
+ * and the array becomes a plain {@link JsonArray}.
+ *
+ * A builder is reused for every array opened at the same depth.
+ */
+final class ArrayBuilder {
+    private static final int LONGS = 0, DOUBLES = 1, NODES = 2;
+    private static final int MAX_DIGITS = 15; // Decimals of up to 15 digits are exact doubles.
+    private static final long MAX_EXACT_LONG = 1L << 53;
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15
+    };
+
+    String key; // The name of the property the array is the value of.
+
+    private int mode;
+    private int size;
+    private long[] longs;
+    private double[] doubles;
+    private byte[] scales;
+    private List<JsonObject> nodes;
+
+    // The result of parseDecimal().
+    private double decimal;
+    private byte scale;
+
+    void reset(String key) {
+        this.key = key;
+        mode = LONGS;
+        size = 0;
+        nodes = null;
+    }
+
+    void addLong(long value) {
+        if (mode == LONGS) {
+            growLongs(size + 1);
+            longs[size++] = value;
+        } else if (mode == DOUBLES && value >= -MAX_EXACT_LONG && value <= MAX_EXACT_LONG) {
+            addDouble(value, JsonDoubleArray.INTEGER);
+        } else {
+            add(JsonInteger.valueOf(value));
+        }
+    }
+
+    void addDecimal(String text) {
+        if (mode != NODES && parseDecimal(text)) {
+            if (mode == LONGS) {
+                toDoubles();
+            }
+            if (mode == DOUBLES) {
+                addDouble(decimal, scale);
+                return;
+            }
+        }
+        add(new JsonDecimal(text));
+    }
+
+    void add(JsonObject node) {
+        if (mode != NODES) {
+            toNodes();
+        }
+        nodes.add(node);
+    }
+
+    /**
+     * Adds the elements of an array built by another builder, ending in the
+     * same mode as if they had been added one by one. Primitive elements are
+     * copied in bulk when the modes match.
+     */
+    void addAll(JsonArray array) {
+        if (array instanceof JsonLongArray) {
+            JsonLongArray longArray = (JsonLongArray) array;
+            int count = longArray.size();
+            if (mode == LONGS) {
+                growLongs(size + count);
+                longArray.copyTo(longs, size);
+                size += count;
+            } else {
+                for (int i = 0; i < count; i++) {
+                    addLong(longArray.getLong(i));
+                }
+            }
+        } else if (array instanceof JsonDoubleArray) {
+            JsonDoubleArray doubleArray = (JsonDoubleArray) array;
+            if (mode == LONGS) {
+                toDoubles();
+            }
+            if (mode == DOUBLES) {
+                growDoubles(size + doubleArray.size());
+                doubleArray.copyTo(doubles, scales, size);
+                size += doubleArray.size();
+            } else {
+                nodes.addAll(doubleArray.getValue());
+            }
+        } else if (!array.getValue().isEmpty()) {
+            if (mode != NODES) {
+                toNodes();
+            }
+            nodes.addAll(array.getValue());
+        }
+    }
+
+    JsonArray build() {
+        if (size == 0 && mode != NODES) {
+            return new JsonArray(new ArrayList<>());
+        }
+
+        switch (mode) {
+            case LONGS:
+                return new JsonLongArray(Arrays.copyOf(longs, size));
+            case DOUBLES:
+                return new JsonDoubleArray(Arrays.copyOf(doubles, size), Arrays.copyOf(scales, size));
+            default:
+                JsonArray array = new JsonArray(nodes);
+                nodes = null;
+                return array;
+        }
+    }
+
+    private void addDouble(double value, byte valueScale) {
+        growDoubles(size + 1);
+        doubles[size] = value;
+        scales[size++] = valueScale;
+    }
+
+    private void growLongs(int minCapacity) {
+        if (longs == null || minCapacity > longs.length) {
+            int capacity = Math.max(minCapacity, longs == null ? 16 : longs.length * 2);
+            longs = longs == null ? new long[capacity] : Arrays.copyOf(longs, capacity);
+        }
+    }
+
+    private void growDoubles(int minCapacity) {
+        if (doubles == null || minCapacity > doubles.length) {
+            int capacity = Math.max(minCapacity, doubles == null ? 16 : doubles.length * 2);
+            doubles = doubles == null ? new double[capacity] : Arrays.copyOf(doubles, capacity);
+            scales = scales == null ? new byte[capacity] : Arrays.copyOf(scales, capacity);
+        }
+    }
+
+    /**
+     * Moves the longs collected so far to the double buffer, or to nodes if
+     * one of them is not an exact double.
+     */
+    private void toDoubles() {
+        for (int i = 0; i < size; i++) {
+            if (longs[i] < -MAX_EXACT_LONG || longs[i] > MAX_EXACT_LONG) {
+                toNodes();
+                return;
+            }
+        }
+
+        int count = size;
+        size = 0;
+        mode = DOUBLES;
+        for (int i = 0; i < count; i++) {
+            addDouble(longs[i], JsonDoubleArray.INTEGER);
+        }
+    }
+
+    private void toNodes() {
+        List<JsonObject> list = new ArrayList<>(Math.max(size, 10));
+        if (size > 0) {
+            // The views of the primitive arrays create the nodes.
+            list.addAll(build().getValue());
+        }
+        nodes = list;
+        mode = NODES;
+    }
+
+    /**
+     * Parses a decimal written as digits, a point and digits, with no leading
+     * zeros and at most 15 digits, into {@link #decimal} and {@link #scale}.
+     * Such decimals print back from the double exactly as they were written.
+     *
+     * @return Whether the text has that form.
+     */
+    private boolean parseDecimal(String text) {
+        int i = 0, len = text.length();
+        boolean negative = len > 0 && text.charAt(0) == '-';
+        if (negative) {
+            i++;
+        }
+
+        int start = i;
+        long mantissa = 0;
+        int point = -1;
+        for (; i < len; i++) {
+            char ch = text.charAt(i);
+            if (ch >= '0' && ch <= '9') {
+                mantissa = mantissa * 10 + (ch - '0');
+            } else if (ch == '.' && point < 0) {
+                point = i;
+            } else {
+                return false; // An exponent, or not a number.
+            }
+        }
+
+        int digits = len - start - 1;
+        if (point <= start || point == len - 1 || digits > MAX_DIGITS
+                || (text.charAt(start) == '0' && point != start + 1)) {
+            return false;
+        }
+
+        scale = (byte) (len - point - 1);
+        decimal = mantissa / POWERS_OF_TEN[scale];
+        if (negative) {
+            decimal = -decimal;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,34 @@
+package com.tomerab.parser;
+
+import com.tomerab.lexer.JsonReader;
+import com.tomerab.lexer.JsonToken.JsonType;
+
+/**
+ * Receives the structure of a document from
+ * {@link JsonParser#parse(JsonHandler)} as it is parsed, in document order.
+ * The parser has already checked the grammar when a method is called, so a
+ * handler only builds whatever representation it wants.
+ *
+ * The reader passed to {@link #key(JsonReader)} and
+ * {@link #value(JsonType, JsonReader)} is positioned on the token of the key or
+ * value, and its accessors are only valid until the method returns.
+ */
+public interface JsonHandler {
+    public void startObject();
+
+    public void endObject();
+
+    public void startArray();
+
+    public void endArray();
+
+    /**
+     * Called with the name of the next property of the current object.
+     */
+    public void key(JsonReader reader);
+
+    /**
+     * Called with a string, number, boolean or null value.
+     */
+    public void value(JsonType type, JsonReader reader);
+}
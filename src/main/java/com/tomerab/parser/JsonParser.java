@@ -1,31 +1,24 @@
 package com.tomerab.parser;
 
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.LinkedHashMap;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Map;
-import java.util.Set;
-
-import com.tomerab.ast.JsonArray;
-import com.tomerab.ast.JsonBoolean;
-import com.tomerab.ast.JsonDecimal;
-import com.tomerab.ast.JsonInteger;
-import com.tomerab.ast.JsonMap;
-import com.tomerab.ast.JsonNull;
+import java.util.Arrays;
+
 import com.tomerab.ast.JsonObject;
-import com.tomerab.ast.JsonString;
 import com.tomerab.exceptions.JsonSyntaxErrorException;
-import com.tomerab.lexer.JsonLexer;
-import com.tomerab.lexer.JsonToken;
+import com.tomerab.lexer.JsonReader;
+import com.tomerab.lexer.KeyCache;
 import com.tomerab.lexer.JsonToken.JsonType;
+import com.tomerab.lexer.JsonTokenizer;
 
 /**
  * The JsonParser class is responsible for parsing JSON strings and converting
  * them into JsonObject representations.
- * It uses a JsonLexer to tokenize the input string and then recursively parses
- * the tokens to build the JsonObject.
+ * It reads the tokens of the input through a JsonReader and parses them to
+ * build the JsonObject, only decoding token values that end up in the tree.
+ * Containers that are still open are kept on an explicit stack rather than the
+ * call stack, so the nesting depth is only limited by
+ * {@link #setMaxDepth(int)}. Object keys are shared through a
+ * {@link KeyCache}, so records with the same keys do not each hold their own
+ * copies.
  * The parser supports parsing JSON objects and arrays, as well as string,
  * number, boolean, and null values.
  * 
@@ -37,13 +30,112 @@ import com.tomerab.lexer.JsonToken.JsonType;
  * JsonObject jsonObject = parser.parse();
  * </pre>
  * 
- * @param lexer The JsonLexer used to tokenize the input JSON string.
+ * @param lexer The JsonLexer or JsonByteLexer used to tokenize the input.
  */
 public class JsonParser {
-    private JsonLexer lexer;
+    public static final int DEFAULT_MAX_DEPTH = 1 << 20;
+
+    // Parser states, one per open container. The bottom of the stack is the
+    // document itself, which expects a single object or array.
+    private static final byte START = 0;
+    private static final byte OBJECT = 1; // After '{' or ','.
+    private static final byte OBJECT_COLON = 2; // After a property name.
+    private static final byte OBJECT_VALUE = 3; // After ':'.
+    private static final byte OBJECT_AFTER_VALUE = 4;
+    private static final byte ARRAY = 5; // After '[' or ','.
+    private static final byte ARRAY_AFTER_VALUE = 6;
+    private static final byte DONE = 7;
+    private static final int STATES = 8;
+
+    // What to do with a token, see parseContainers().
+    private static final byte ERROR = 0, SKIP = 1, KEY = 2, VALUE = 3, OPEN_OBJECT = 4, OPEN_ARRAY = 5, CLOSE = 6;
+
+    private static final int TYPES = JsonType.values().length;
+    private static final byte[] ACTIONS = new byte[STATES * TYPES];
+    private static final byte[] NEXT_STATES = new byte[STATES * TYPES];
+
+    static {
+        JsonType[] scalars = { JsonType.STRING, JsonType.NUMBER_DECIMAL, JsonType.NUMBER_INTEGER, JsonType.BOOLEAN,
+                JsonType.NULL };
+
+        on(START, OPEN_OBJECT, DONE, JsonType.OBJ_OPEN);
+        on(START, OPEN_ARRAY, DONE, JsonType.ARR_OPEN);
+
+        // Commas are not checked for a following value, so "{,}" and "[1,]" parse.
+        on(OBJECT, KEY, OBJECT_COLON, JsonType.STRING);
+        on(OBJECT, SKIP, OBJECT, JsonType.COMMA);
+        on(OBJECT, CLOSE, DONE, JsonType.OBJ_CLOSE);
+        on(OBJECT_COLON, SKIP, OBJECT_VALUE, JsonType.COLON);
+        on(OBJECT_VALUE, VALUE, OBJECT_AFTER_VALUE, scalars);
+        on(OBJECT_VALUE, OPEN_OBJECT, OBJECT_AFTER_VALUE, JsonType.OBJ_OPEN);
+        on(OBJECT_VALUE, OPEN_ARRAY, OBJECT_AFTER_VALUE, JsonType.ARR_OPEN);
+        on(OBJECT_AFTER_VALUE, SKIP, OBJECT, JsonType.COMMA);
+        on(OBJECT_AFTER_VALUE, CLOSE, DONE, JsonType.OBJ_CLOSE);
+
+        on(ARRAY, VALUE, ARRAY_AFTER_VALUE, scalars);
+        on(ARRAY, OPEN_OBJECT, ARRAY_AFTER_VALUE, JsonType.OBJ_OPEN);
+        on(ARRAY, OPEN_ARRAY, ARRAY_AFTER_VALUE, JsonType.ARR_OPEN);
+        on(ARRAY, SKIP, ARRAY, JsonType.COMMA);
+        on(ARRAY, CLOSE, DONE, JsonType.ARR_CLOSE);
+        on(ARRAY_AFTER_VALUE, SKIP, ARRAY, JsonType.COMMA);
+        on(ARRAY_AFTER_VALUE, CLOSE, DONE, JsonType.ARR_CLOSE);
+    }
+
+    private static void on(byte state, byte action, byte next, JsonType... types) {
+        for (JsonType type : types) {
+            ACTIONS[state * TYPES + type.ordinal()] = action;
+            NEXT_STATES[state * TYPES + type.ordinal()] = next;
+        }
+    }
+
+    private JsonReader lexer;
+    private final KeyCache keys;
+    private int maxDepth = DEFAULT_MAX_DEPTH;
+
+    // The stack of frames: the document, then each open container, with the
+    // innermost one at depth - 1.
+    private byte[] states = new byte[16];
+    private int depth;
+    private boolean shallow; // Whether nested containers are skipped, see parseLevel().
+    private boolean elements; // Whether the input may end between elements, see parseElements().
+    private PathFilter filter; // Decides which containers are parsed, see parse(JsonPath).
+    private boolean partial; // Whether more input may still arrive, see resume().
 
-    public JsonParser(JsonLexer lexer) {
-        this.lexer = lexer;
+    public JsonParser(JsonTokenizer lexer) {
+        this(new JsonReader(lexer));
+    }
+
+    public JsonParser(JsonReader reader) {
+        this(reader, new KeyCache());
+    }
+
+    /**
+     * @param keys The cache that object keys are shared through, or null to
+     *             give every key its own String.
+     */
+    public JsonParser(JsonTokenizer lexer, KeyCache keys) {
+        this(new JsonReader(lexer), keys);
+    }
+
+    /**
+     * @param keys The cache that object keys are shared through, or null to
+     *             give every key its own String.
+     */
+    public JsonParser(JsonReader reader, KeyCache keys) {
+        this.lexer = reader;
+        this.keys = keys;
+    }
+
+    /**
+     * @param maxDepth The number of containers that may be nested in each
+     *                 other; parsing deeper input fails with a
+     *                 {@link JsonSyntaxErrorException}.
+     */
+    public void setMaxDepth(int maxDepth) {
+        if (maxDepth <= 0) {
+            throw new IllegalArgumentException("Max depth must be positive: " + maxDepth);
+        }
+        this.maxDepth = maxDepth;
     }
 
     /**
@@ -56,190 +148,236 @@ public class JsonParser {
      *                                  array.
      */
     public JsonObject parse() {
-        if (!lexer.hasNext()) {
-            throw new JsonSyntaxErrorException("Unexpected end of input");
-        }
-
-        JsonToken token = lexer.next();
+        TreeBuilder builder = new TreeBuilder(keys);
+        parse(builder);
+        return builder.getRoot();
+    }
 
-        switch (token.getType()) {
-            case OBJ_OPEN:
-                return parseObject(new LinkedHashMap<>());
-            case ARR_OPEN:
-                return parseArray(new LinkedList<>());
-            default:
-                throw new JsonSyntaxErrorException("Expected object or array at the beginning");
+    /**
+     * Parses only the values that a path selects, and the containers on the
+     * way to them. Containers that no path goes through are skipped by
+     * matching brackets and quotes, so errors inside them go unnoticed. The
+     * containers that are built keep the selected properties and elements in
+     * their order; array elements that are not selected are left out, so the
+     * indexes of the rest change.
+     *
+     * @return The outermost object or array, holding the selected values.
+     * @throws JsonSyntaxErrorException if the input is not a JSON object or
+     *                                  array.
+     */
+    public JsonObject parse(JsonPath path) {
+        TreeBuilder builder = new TreeBuilder(keys);
+        filter = new PathFilter(path, builder, keys);
+        try {
+            parse(filter);
+        } finally {
+            filter = null;
         }
+        return builder.getRoot();
     }
 
     /**
-     * Parses a JSON object from the input stream.
+     * Parses the JSON input, passing its structure to a handler instead of
+     * building a tree. The input is checked exactly as {@link #parse()} checks
+     * it.
      *
-     * @param map The map to store the parsed key-value pairs of the JSON object.
-     * @return The parsed JSON object.
-     * @throws JsonSyntaxErrorException If there is a syntax error in the JSON
-     *                                  object.
+     * @throws JsonSyntaxErrorException if the input is not a JSON object or
+     *                                  array.
      */
-    private JsonObject parseObject(Map<String, JsonObject> map) {
-        boolean shouldExitLoop = false;
-        Set<JsonType> expectedTypes = new HashSet<>();
-
-        while (!shouldExitLoop && lexer.hasNext()) {
-            JsonToken token = lexer.next();
-
-            if (!expectedTypes.isEmpty() && !expectedTypes.contains(token.getType())) {
-                throw new JsonSyntaxErrorException(
-                        "Expected ',' or '}' after property value in object, at: " + lexer.getCursor());
-            }
-
-            switch (token.getType()) {
-                case OBJ_CLOSE:
-                    shouldExitLoop = true;
-                    break;
-                case STRING:
-                    String key = token.getString();
-
-                    if (!isNextMatching(JsonType.COLON)) {
-                        throw new JsonSyntaxErrorException(
-                                "Expected ':' after property name, at: " + lexer.getCursor());
-                    }
-
-                    addExpectedTypesObject(expectedTypes);
-                    JsonObject value = parseValue();
-                    map.put(key, value);
-
-                    break;
-                case COMMA:
-                    expectedTypes.clear();
-                    break;
-                default:
-                    throw new JsonSyntaxErrorException("Unexpected token in object, at: " + lexer.getCursor());
-            }
-        }
+    public void parse(JsonHandler handler) {
+        depth = 0;
+        push(START);
+        parseContainers(handler);
+    }
 
-        if (!shouldExitLoop) {
-            throw new JsonSyntaxErrorException("Unterminated object, at: " + lexer.getCursor());
+    /**
+     * Parses a single container, passing the containers nested in it to
+     * {@link JsonHandler#value(JsonType, JsonReader)} as one value without
+     * parsing them: the type is {@link JsonType#OBJ_OPEN} or
+     * {@link JsonType#ARR_OPEN}, and the reader's token spans the whole nested
+     * container, which is skipped with {@link JsonReader#skipContainer()}.
+     */
+    void parseLevel(JsonHandler handler) {
+        shallow = true;
+        try {
+            parse(handler);
+        } finally {
+            shallow = false;
         }
-
-        return new JsonMap(map);
     }
 
     /**
-     * Parses a JSON value from the input stream.
+     * Parses elements of an array whose opening bracket came before the input,
+     * as {@link ParallelParser} does with each part of a large array. The
+     * elements are passed to the handler as if the array had been opened, up
+     * to its closing bracket or the end of the input, whichever comes first;
+     * the input may only end between elements.
      *
-     * @return The parsed JSON value.
-     * @throws JsonSyntaxErrorException If an unexpected end of input or token is
-     *                                  encountered
-     *                                  while parsing the value.
+     * @return Whether the closing bracket was reached, in which case
+     *         {@link JsonHandler#endArray()} was called.
      */
-    private JsonObject parseValue() {
-        if (!lexer.hasNext()) {
-            throw new JsonSyntaxErrorException("Unexpected end of input while parsing value");
+    boolean parseElements(JsonHandler handler) {
+        depth = 0;
+        push(DONE);
+        push(ARRAY);
+        elements = true;
+        try {
+            return parseContainers(handler);
+        } finally {
+            elements = false;
         }
+    }
 
-        JsonToken token = lexer.next();
-
-        switch (token.getType()) {
-            case OBJ_OPEN:
-                return parseObject(new LinkedHashMap<>());
-            case ARR_OPEN:
-                return parseArray(new ArrayList<>());
-            case STRING:
-                return new JsonString(token.getString());
-            case NUMBER_DECIMAL:
-                return new JsonDecimal(token.getDecimal());
-            case NUMBER_INTEGER:
-                return new JsonInteger(token.getInteger());
-            case BOOLEAN:
-                return new JsonBoolean(token.getBool());
-            case NULL:
-                return new JsonNull();
-            default:
-                throw new JsonSyntaxErrorException("Unexpected token while parsing value, at: " + lexer.getCursor());
-        }
+    /**
+     * Starts a document whose input arrives in parts, which
+     * {@link #resume(JsonHandler, boolean)} then parses as it arrives.
+     */
+    void start() {
+        depth = 0;
+        push(START);
     }
 
-    private boolean isNextMatching(JsonType type) {
-        if (!lexer.hasNext()) {
-            throw new JsonSyntaxErrorException("Unexpected end of input when expecting token: " + type);
+    /**
+     * Parses the tokens of the document that have arrived, as
+     * {@link JsonPushParser} does. The parser stops between two tokens when
+     * the next one has not arrived yet, and carries on from there on the next
+     * call.
+     *
+     * @param ended Whether the input has ended, so that a document that is not
+     *              done is an error.
+     * @return Whether the document is done.
+     */
+    boolean resume(JsonHandler handler, boolean ended) {
+        partial = !ended;
+        try {
+            return parseContainers(handler);
+        } finally {
+            partial = false;
         }
-
-        return lexer.next().getType() == type;
     }
 
     /**
-     * Parses an array of JSON objects.
+     * Parses tokens until the outermost container is closed. Each token is
+     * looked up in the transition tables by the state of the innermost
+     * container, which gives the action to take and the next state of that
+     * container.
      *
-     * @param arr The list of JSON objects to parse.
-     * @return The parsed JSON array.
-     * @throws JsonSyntaxErrorException If there is a syntax error in the JSON
-     *                                  array.
+     * @return Whether the outermost container was closed, which it always is
+     *         unless the input ends between the elements of parseElements(),
+     *         or has not all arrived yet in resume().
+     * @throws JsonSyntaxErrorException If there is a syntax error in a
+     *                                  container.
      */
-    private JsonObject parseArray(List<JsonObject> arr) {
-        boolean shouldExitLoop = false;
-        Set<JsonType> expectedTypes = new HashSet<>();
-
-        while (!shouldExitLoop && lexer.hasNext()) {
-            JsonToken token = lexer.next();
+    private boolean parseContainers(JsonHandler handler) {
+        while (true) {
+            int frame = depth - 1;
+            byte state = states[frame];
 
-            if (!expectedTypes.isEmpty() && !expectedTypes.contains(token.getType())) {
-                throw new JsonSyntaxErrorException("Expected ',' or ']' after array element, at: " + lexer.getCursor());
+            if (!lexer.hasNext()) {
+                if (partial) {
+                    return false; // Parsing resumes here once more input has arrived.
+                }
+                if (elements && depth == 2 && (state == ARRAY || state == ARRAY_AFTER_VALUE)) {
+                    depth = 0;
+                    return false;
+                }
+                throw unexpectedEnd(state);
             }
+            JsonType type = lexer.nextToken();
 
-            switch (token.getType()) {
-                case OBJ_OPEN:
-                    addExpectedTypesArray(expectedTypes);
-                    arr.add(parseObject(new LinkedHashMap<>()));
-                    break;
-                case ARR_OPEN:
-                    addExpectedTypesArray(expectedTypes);
-                    arr.add(parseArray(new LinkedList<>()));
-                    break;
-                case ARR_CLOSE:
-                    shouldExitLoop = true;
-                    break;
-                case STRING:
-                    addExpectedTypesArray(expectedTypes);
-                    arr.add(new JsonString(token.getString()));
-                    break;
-                case NUMBER_DECIMAL:
-                    addExpectedTypesArray(expectedTypes);
-                    arr.add(new JsonDecimal(token.getDecimal()));
+            int transition = state * TYPES + type.ordinal();
+            byte action = ACTIONS[transition];
+            states[frame] = NEXT_STATES[transition];
+
+            switch (action) {
+                case SKIP:
                     break;
-                case NUMBER_INTEGER:
-                    addExpectedTypesArray(expectedTypes);
-                    arr.add(new JsonInteger(token.getInteger()));
+                case KEY:
+                    handler.key(lexer);
                     break;
-                case BOOLEAN:
-                    addExpectedTypesArray(expectedTypes);
-                    arr.add(new JsonBoolean(token.getBool()));
+                case VALUE:
+                    handler.value(type, lexer);
                     break;
-                case NULL:
-                    addExpectedTypesArray(expectedTypes);
-                    arr.add(new JsonNull());
+                case OPEN_OBJECT, OPEN_ARRAY:
+                    if ((shallow && depth > 1) || (filter != null && !filter.enters())) {
+                        if (lexer.skipContainer() == null) {
+                            throw unexpectedEnd(action == OPEN_OBJECT ? OBJECT : ARRAY);
+                        }
+                        if (shallow) {
+                            handler.value(type, lexer);
+                        }
+                        break;
+                    }
+                    if (action == OPEN_OBJECT) {
+                        push(OBJECT);
+                        handler.startObject();
+                    } else {
+                        push(ARRAY);
+                        handler.startArray();
+                    }
                     break;
-                case COMMA:
-                    expectedTypes.clear();
+                case CLOSE:
+                    depth--;
+                    if (state == OBJECT || state == OBJECT_AFTER_VALUE) {
+                        handler.endObject();
+                    } else {
+                        handler.endArray();
+                    }
+                    if (depth == 1) {
+                        depth = 0; // The document is done.
+                        return true;
+                    }
                     break;
                 default:
-                    throw new JsonSyntaxErrorException("Unexpected token in array, at: " + lexer.getCursor());
+                    throw unexpectedToken(state);
             }
         }
+    }
 
-        if (!shouldExitLoop) {
-            throw new JsonSyntaxErrorException("Unterminated array, at: " + lexer.getCursor());
+    private JsonSyntaxErrorException unexpectedToken(byte state) {
+        switch (state) {
+            case START:
+                return new JsonSyntaxErrorException("Expected object or array at the beginning");
+            case OBJECT:
+                return new JsonSyntaxErrorException("Unexpected token in object, at: " + lexer.getCursor());
+            case OBJECT_COLON:
+                return new JsonSyntaxErrorException("Expected ':' after property name, at: " + lexer.getCursor());
+            case OBJECT_VALUE:
+                return new JsonSyntaxErrorException("Unexpected token while parsing value, at: " + lexer.getCursor());
+            case OBJECT_AFTER_VALUE:
+                return new JsonSyntaxErrorException(
+                        "Expected ',' or '}' after property value in object, at: " + lexer.getCursor());
+            case ARRAY:
+                return new JsonSyntaxErrorException("Unexpected token in array, at: " + lexer.getCursor());
+            default:
+                return new JsonSyntaxErrorException("Expected ',' or ']' after array element, at: " + lexer.getCursor());
         }
-
-        return new JsonArray(arr);
     }
 
-    private void addExpectedTypesArray(Set<JsonType> set) {
-        set.add(JsonType.COMMA);
-        set.add(JsonType.ARR_CLOSE);
+    private JsonSyntaxErrorException unexpectedEnd(byte state) {
+        switch (state) {
+            case START:
+                return new JsonSyntaxErrorException("Unexpected end of input");
+            case OBJECT, OBJECT_AFTER_VALUE:
+                return new JsonSyntaxErrorException("Unterminated object, at: " + lexer.getCursor());
+            case OBJECT_COLON:
+                return new JsonSyntaxErrorException("Unexpected end of input when expecting token: COLON");
+            case OBJECT_VALUE:
+                return new JsonSyntaxErrorException("Unexpected end of input while parsing value");
+            default:
+                return new JsonSyntaxErrorException("Unterminated array, at: " + lexer.getCursor());
+        }
     }
 
-    private void addExpectedTypesObject(Set<JsonType> set) {
-        set.add(JsonType.COMMA);
-        set.add(JsonType.OBJ_CLOSE);
+    private void push(byte state) {
+        if (depth > maxDepth) { // The document itself is the first frame.
+            throw new JsonSyntaxErrorException("Maximum nesting depth of " + maxDepth + " exceeded, at: "
+                    + lexer.getCursor());
+        }
+        if (depth == states.length) {
+            states = Arrays.copyOf(states, depth * 2);
+        }
+
+        states[depth++] = state;
     }
 }
@@ -0,0 +1,179 @@
+package com.tomerab.parser;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The JsonPath class is a set of paths into a document, which
+ * {@link JsonParser#parse(JsonPath)} builds the nodes of while skipping the
+ * rest. A path starts at the document with {@code $}, followed by steps:
+ * {@code .name} or {@code ['name']} for a property, {@code [n]} for an array
+ * element, and {@code .*} or {@code [*]} for every property or element.
+ *
+ * <pre>
+ * JsonPath path = JsonPath.compile("$.items[*].id", "$.meta.version");
+ * JsonObject partial = new JsonParser(lexer).parse(path);
+ * </pre>
+ */
+public final class JsonPath {
+    private final Step root = new Step();
+    private final String source;
+
+    private JsonPath(String[] paths) {
+        this.source = String.join(", ", paths);
+    }
+
+    /**
+     * @throws IllegalArgumentException if a path is not valid.
+     */
+    public static JsonPath compile(String... paths) {
+        JsonPath path = new JsonPath(paths);
+        for (String p : paths) {
+            path.add(p);
+        }
+        return path;
+    }
+
+    Step[] root() {
+        return root.alone;
+    }
+
+    @Override
+    public String toString() {
+        return source;
+    }
+
+    private void add(String path) {
+        if (!path.startsWith("$")) {
+            throw invalid(path, 0);
+        }
+
+        Step step = root;
+        int i = 1;
+        while (i < path.length()) {
+            char ch = path.charAt(i);
+            if (ch == '.') {
+                int end = i + 1;
+                while (end < path.length() && path.charAt(end) != '.' && path.charAt(end) != '[') {
+                    end++;
+                }
+                if (end == i + 1) {
+                    throw invalid(path, i);
+                }
+                String name = path.substring(i + 1, end);
+                step = name.equals("*") ? step.any() : step.name(name);
+                i = end;
+            } else if (ch == '[') {
+                char quote = i + 1 < path.length() ? path.charAt(i + 1) : 0;
+                int end;
+                if (quote == '\'' || quote == '"') {
+                    // A quoted name may hold any character but its quote.
+                    end = path.indexOf(quote, i + 2) + 1;
+                    if (end == 0 || end == path.length() || path.charAt(end) != ']') {
+                        throw invalid(path, i);
+                    }
+                    step = step.name(path.substring(i + 2, end - 1));
+                } else {
+                    end = path.indexOf(']', i);
+                    if (end < 0 || end == i + 1) {
+                        throw invalid(path, i);
+                    }
+                    String inner = path.substring(i + 1, end);
+                    step = inner.equals("*") ? step.any() : step.index(parseIndex(path, i, inner));
+                }
+                i = end + 1;
+            } else {
+                throw invalid(path, i);
+            }
+        }
+        step.selected = true;
+    }
+
+    private static int parseIndex(String path, int at, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) < '0' || text.charAt(i) > '9') {
+                throw invalid(path, at);
+            }
+        }
+        try {
+            return Integer.parseInt(text);
+        } catch (NumberFormatException e) {
+            throw invalid(path, at);
+        }
+    }
+
+    private static IllegalArgumentException invalid(String path, int index) {
+        return new IllegalArgumentException("Invalid path at index " + index + ": " + path);
+    }
+
+    /**
+     * A step of the paths, which the values that match it are checked against
+     * the children of. Several steps can match one value, such as
+     * {@code $.a.x} and {@code $.*.y} at {@code a}.
+     */
+    static final class Step {
+        static final Step[] NONE = {};
+
+        final Step[] alone = { this }; // Saves allocating the common one-step match.
+        private final Map<String, Step> names = new HashMap<>();
+        private final Map<Integer, Step> indexes = new HashMap<>();
+        private Step any;
+        boolean selected; // Whether a path ends here, selecting the whole value.
+
+        private Step name(String name) {
+            return names.computeIfAbsent(name, n -> new Step());
+        }
+
+        private Step index(int index) {
+            return indexes.computeIfAbsent(index, n -> new Step());
+        }
+
+        private Step any() {
+            if (any == null) {
+                any = new Step();
+            }
+            return any;
+        }
+
+        /**
+         * @param name  The name of the property, or null for an array element.
+         * @param index The index of the array element.
+         * @return The steps that the property or element matches.
+         */
+        static Step[] next(Step[] steps, String name, int index) {
+            Step[] next = NONE;
+            for (Step step : steps) {
+                Step child = name != null ? step.names.get(name)
+                        : step.indexes.isEmpty() ? null : step.indexes.get(index);
+                next = add(next, child);
+                next = add(next, step.any);
+            }
+            return next;
+        }
+
+        /**
+         * @return Whether one of the steps ends a path.
+         */
+        static boolean selects(Step[] steps) {
+            for (Step step : steps) {
+                if (step.selected) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static Step[] add(Step[] steps, Step step) {
+            if (step == null) {
+                return steps;
+            }
+            if (steps.length == 0) {
+                return step.alone;
+            }
+            Step[] more = new Step[steps.length + 1];
+            System.arraycopy(steps, 0, more, 0, steps.length);
+            more[steps.length] = step;
+            return more;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.tomerab.parser;
+
+import java.nio.ByteBuffer;
+import java.util.function.Consumer;
+
+import com.tomerab.ast.JsonObject;
+import com.tomerab.exceptions.JsonSyntaxErrorException;
+import com.tomerab.lexer.JsonPushLexer;
+import com.tomerab.lexer.KeyCache;
+
+/**
+ * The JsonPushParser class parses input that arrives in parts, such as from a
+ * non-blocking channel, without waiting for all of it. Each part is parsed as
+ * far as its tokens go when it is passed to {@link #feed(ByteBuffer)}: the
+ * parser stops in the middle of a container, or before a token whose last byte
+ * has not arrived, and carries on when the next part arrives.
+ *
+ * The input is a sequence of documents separated by whitespace, such as the
+ * messages of a stream. The parser either passes the structure of each
+ * document to a {@link JsonHandler} as it arrives, or builds each document and
+ * passes it to a consumer once it is done. A number at the end of a part is
+ * only passed on once the byte after it, or the end of the input, shows that
+ * it is complete.
+ *
+ * Syntax errors are reported as {@link JsonParser} reports them, positions
+ * included, by the call that parses the token in error. The parser cannot be
+ * used after an error.
+ *
+ * <pre>
+ * JsonPushParser parser = new JsonPushParser(document -&gt; handle(document));
+ * while (channel.read(buffer) &gt;= 0) {
+ *     parser.feed(buffer.flip());
+ *     buffer.clear();
+ * }
+ * parser.endOfInput();
+ * </pre>
+ */
+public class JsonPushParser {
+    private final JsonPushLexer lexer = new JsonPushLexer();
+    private final JsonParser parser;
+    private final JsonHandler handler;
+    private final TreeBuilder builder; // Builds the documents for the consumer, or null.
+    private final Consumer<JsonObject> documents;
+    private boolean inDocument;
+    private boolean failed;
+
+    /**
+     * Creates a parser that passes the structure of each document to a handler
+     * as it arrives.
+     */
+    public JsonPushParser(JsonHandler handler) {
+        this.parser = new JsonParser(lexer);
+        this.handler = handler;
+        this.builder = null;
+        this.documents = null;
+    }
+
+    /**
+     * Creates a parser that passes each document to a consumer once it is
+     * done.
+     */
+    public JsonPushParser(Consumer<JsonObject> documents) {
+        KeyCache keys = new KeyCache();
+        this.parser = new JsonParser(lexer, keys);
+        this.builder = new TreeBuilder(keys);
+        this.handler = builder;
+        this.documents = documents;
+    }
+
+    /**
+     * @see JsonParser#setMaxDepth(int)
+     */
+    public void setMaxDepth(int maxDepth) {
+        parser.setMaxDepth(maxDepth);
+    }
+
+    /**
+     * Parses the remaining bytes of a buffer as far as they go. The bytes that
+     * are not parsed yet are copied, so the buffer can be reused once the
+     * method returns.
+     *
+     * @throws JsonSyntaxErrorException if the input is not a sequence of JSON
+     *                                  objects and arrays.
+     * @throws IllegalStateException    if the end of the input has been
+     *                                  reached, or parsing failed before.
+     */
+    public void feed(ByteBuffer chunk) {
+        checkUsable();
+        lexer.feed(chunk);
+        parseArrived();
+    }
+
+    /**
+     * Marks the end of the input, and parses the rest of it.
+     *
+     * @throws JsonSyntaxErrorException if the last document is not done.
+     */
+    public void endOfInput() {
+        checkUsable();
+        lexer.endOfInput();
+        parseArrived();
+    }
+
+    private void parseArrived() {
+        try {
+            while (true) {
+                if (!inDocument) {
+                    if (!lexer.hasNext()) {
+                        return; // Only whitespace has arrived since the last document.
+                    }
+                    parser.start();
+                    inDocument = true;
+                }
+                if (!parser.resume(handler, lexer.isEnded())) {
+                    return;
+                }
+                inDocument = false;
+
+                if (documents != null) {
+                    JsonObject document = builder.getRoot();
+                    builder.reset();
+                    documents.accept(document);
+                }
+            }
+        } catch (RuntimeException e) {
+            failed = true;
+            throw e;
+        }
+    }
+
+    private void checkUsable() {
+        if (failed) {
+            throw new IllegalStateException("The parser cannot be used after an error");
+        }
+    }
+}
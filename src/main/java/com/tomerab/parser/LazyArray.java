@@ -0,0 +1,44 @@
+package com.tomerab.parser;
+
+import java.util.List;
+
+import com.tomerab.ast.JsonArray;
+import com.tomerab.ast.JsonObject;
+import com.tomerab.visitor.JsonVisitor;
+
+/**
+ * An array of a {@link LazyParser} document, which is only parsed when it is
+ * first accessed. Numeric arrays are parsed into a
+ * {@link com.tomerab.ast.JsonLongArray} or
+ * {@link com.tomerab.ast.JsonDoubleArray}, which visitors are passed.
+ */
+final class LazyArray extends JsonArray {
+    private LazyParser document;
+    private final long offset;
+    private JsonArray array;
+
+    LazyArray(LazyParser document, long offset) {
+        super(null);
+        this.document = document;
+        this.offset = offset;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<JsonObject> getValue() {
+        return array().getValue();
+    }
+
+    @Override
+    public void accept(JsonVisitor visitor) {
+        array().accept(visitor);
+    }
+
+    private JsonArray array() {
+        if (array == null) {
+            array = (JsonArray) document.parseAt(offset);
+            document = null;
+        }
+        return array;
+    }
+}
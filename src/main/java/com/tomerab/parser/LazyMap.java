@@ -0,0 +1,42 @@
+package com.tomerab.parser;
+
+import java.util.Map;
+
+import com.tomerab.ast.JsonMap;
+import com.tomerab.ast.JsonObject;
+import com.tomerab.visitor.JsonVisitor;
+
+/**
+ * An object of a {@link LazyParser} document, which is only parsed when it is
+ * first accessed.
+ */
+final class LazyMap extends JsonMap {
+    private LazyParser document;
+    private final long offset;
+    private JsonMap map;
+
+    LazyMap(LazyParser document, long offset) {
+        super(null);
+        this.document = document;
+        this.offset = offset;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map<String, JsonObject> getValue() {
+        return map().getValue();
+    }
+
+    @Override
+    public void accept(JsonVisitor visitor) {
+        map().accept(visitor);
+    }
+
+    private JsonMap map() {
+        if (map == null) {
+            map = (JsonMap) document.parseAt(offset);
+            document = null;
+        }
+        return map;
+    }
+}
@@ -0,0 +1,88 @@
+package com.tomerab.parser;
+
+import java.nio.ByteBuffer;
+
+import com.tomerab.ast.JsonObject;
+import com.tomerab.exceptions.JsonSyntaxErrorException;
+import com.tomerab.lexer.JsonByteLexer;
+import com.tomerab.lexer.JsonToken.JsonType;
+import com.tomerab.lexer.KeyCache;
+
+/**
+ * The LazyParser class parses a document on demand. {@link #parse()} only
+ * finds the outermost object or array; each container is parsed one level at
+ * a time, the first time its {@code getValue()} is called, and the containers
+ * nested in it are skipped by matching brackets and quotes until they are
+ * accessed in turn. Reading a few fields of a large document therefore only
+ * parses the containers on the way to them.
+ *
+ * Containers that are never accessed are never checked, so errors inside them
+ * go unnoticed. The input must not change while its nodes are in use, and the
+ * nodes of a document share one lexer, so they are not safe to use from
+ * several threads.
+ *
+ * <pre>
+ * JsonMap root = (JsonMap) new LazyParser(Files.readAllBytes(path)).parse();
+ * JsonObject name = ((JsonMap) root.getValue().get("user")).getValue().get("name");
+ * </pre>
+ */
+public class LazyParser {
+    private final JsonByteLexer lexer;
+    private final JsonParser parser;
+    private final KeyCache keys;
+
+    public LazyParser(byte[] bytes) {
+        this(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * Creates a parser over the remaining bytes of a buffer, such as a mapped
+     * file. The buffer is not copied.
+     */
+    public LazyParser(ByteBuffer bytes) {
+        this(bytes, new KeyCache());
+    }
+
+    /**
+     * @param keys The cache that object keys are shared through, or null to
+     *             give every key its own String.
+     */
+    public LazyParser(ByteBuffer bytes, KeyCache keys) {
+        this.lexer = new JsonByteLexer(bytes);
+        this.parser = new JsonParser(lexer, keys);
+        this.keys = keys;
+    }
+
+    /**
+     * @return The outermost object or array, which is parsed when it is first
+     *         accessed.
+     * @throws JsonSyntaxErrorException if the input does not start with an
+     *                                  object or array.
+     */
+    public JsonObject parse() {
+        lexer.seek(0);
+        if (!lexer.hasNext()) {
+            throw new JsonSyntaxErrorException("Unexpected end of input");
+        }
+
+        JsonType type = lexer.nextToken();
+        if (type == JsonType.OBJ_OPEN) {
+            return new LazyMap(this, lexer.tokenStart());
+        }
+        if (type == JsonType.ARR_OPEN) {
+            return new LazyArray(this, lexer.tokenStart());
+        }
+        throw new JsonSyntaxErrorException("Expected object or array at the beginning");
+    }
+
+    /**
+     * Parses the container that starts at {@code offset}, leaving the
+     * containers nested in it to be parsed when they are accessed.
+     */
+    JsonObject parseAt(long offset) {
+        lexer.seek(offset);
+        TreeBuilder builder = new TreeBuilder(keys, this);
+        parser.parseLevel(builder);
+        return builder.getRoot();
+    }
+}
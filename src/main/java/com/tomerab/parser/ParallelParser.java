@@ -0,0 +1,329 @@
+package com.tomerab.parser;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import com.tomerab.ast.JsonArray;
+import com.tomerab.ast.JsonObject;
+import com.tomerab.exceptions.JsonSyntaxErrorException;
+import com.tomerab.lexer.JsonByteLexer;
+import com.tomerab.lexer.JsonLexer;
+import com.tomerab.lexer.KeyCache;
+
+/**
+ * The ParallelParser class parses documents whose outermost value is a large
+ * array on several threads. It first scans the input for the commas between
+ * the elements of the outermost array, skipping strings, and splits the
+ * elements at those commas into chunks of about {@link #setChunkSize(int)}
+ * bytes. The chunks are parsed by the tasks of a {@link ForkJoinPool}, and
+ * their elements are joined into one array in their original order.
+ *
+ * The result is the same as {@link JsonParser#parse()} returns. If any chunk
+ * fails to parse, the whole input is parsed again on the calling thread, so
+ * syntax errors are reported exactly as JsonParser reports them, positions
+ * included. Documents that are not an array, or too small to split, are
+ * parsed on the calling thread.
+ *
+ * <pre>
+ * JsonObject json = new ParallelParser(Files.readAllBytes(path)).parse();
+ * </pre>
+ */
+public class ParallelParser {
+    public static final int DEFAULT_MIN_CHUNK_SIZE = 1 << 18; // 256 KiB
+    private static final int CHUNKS_PER_THREAD = 4; // Evens out chunks that take longer.
+
+    private final ByteBuffer bytes;
+    private final ForkJoinPool pool;
+    private int maxDepth = JsonParser.DEFAULT_MAX_DEPTH;
+    private int chunkSize; // 0 to split by the parallelism of the pool.
+
+    public ParallelParser(byte[] bytes) {
+        this(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * Creates a parser over the remaining bytes of a buffer, such as a mapped
+     * file, which parses on the common pool. The buffer is not copied.
+     */
+    public ParallelParser(ByteBuffer bytes) {
+        this(bytes, ForkJoinPool.commonPool());
+    }
+
+    public ParallelParser(ByteBuffer bytes, ForkJoinPool pool) {
+        this.bytes = bytes.slice();
+        this.pool = pool;
+    }
+
+    /**
+     * @see JsonParser#setMaxDepth(int)
+     */
+    public void setMaxDepth(int maxDepth) {
+        if (maxDepth <= 0) {
+            throw new IllegalArgumentException("Max depth must be positive: " + maxDepth);
+        }
+        this.maxDepth = maxDepth;
+    }
+
+    /**
+     * @param chunkSize The number of bytes of elements each task parses. By
+     *                  default there are four chunks per thread of the pool,
+     *                  of at least {@value #DEFAULT_MIN_CHUNK_SIZE} bytes.
+     */
+    public void setChunkSize(int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+        }
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Parses the JSON input and returns a JsonObject.
+     *
+     * @throws JsonSyntaxErrorException if the input is not a JSON object or
+     *                                  array.
+     */
+    public JsonObject parse() {
+        // The elements of the outermost array are nested in it, so there is
+        // nothing to split when they may not be containers.
+        int[] bounds = maxDepth > 1 ? split() : null;
+        if (bounds != null) {
+            JsonArray array = parseChunks(bounds);
+            if (array != null) {
+                return array;
+            }
+        }
+
+        JsonParser parser = new JsonParser(new JsonByteLexer(bytes), new KeyCache());
+        parser.setMaxDepth(maxDepth);
+        return parser.parse();
+    }
+
+    /**
+     * Finds where the chunks of the outermost array start: after its opening
+     * bracket, then at the first comma between two of its elements in each
+     * region of chunk size bytes. The last bound is the end of the input.
+     *
+     * The regions are scanned in parallel. Whether a region starts inside a
+     * string, and how deeply nested, depends on the regions before it, so its
+     * scan finds the commas for both string states and every depth, and the
+     * regions are then resolved in order. A comma found this way is only a
+     * guess until the chunks on both sides of it parse.
+     *
+     * @return The bounds, or null if the input is not an array of at least
+     *         two chunks.
+     */
+    private int[] split() {
+        int limit = bytes.limit();
+        int size = chunkSize > 0 ? chunkSize
+                : Math.max(DEFAULT_MIN_CHUNK_SIZE, limit / (pool.getParallelism() * CHUNKS_PER_THREAD));
+        // Scanning the array of a heap buffer directly is several times faster.
+        byte[] array = bytes.hasArray() ? bytes.array() : null;
+        int offset = array != null ? bytes.arrayOffset() : 0;
+
+        int first = 0;
+        while (first < limit && JsonLexer.isWhitespace(byteAt(array, offset, first) & 0xFF)) {
+            first++;
+        }
+        if (first == limit || byteAt(array, offset, first++) != '[') {
+            return null;
+        }
+
+        // A region never starts after a backslash, so its first byte is never
+        // escaped.
+        int[] starts = new int[(int) ((limit - first + (long) size - 1) / size)];
+        int regions = 0;
+        for (long at = first; at < limit && regions < starts.length; at += size) {
+            int start = (int) Math.max(at, regions > 0 ? starts[regions - 1] + 1 : at);
+            while (start < limit && byteAt(array, offset, start - 1) == '\\') {
+                start++;
+            }
+            if (start >= limit) {
+                break;
+            }
+            starts[regions++] = start;
+        }
+        if (regions < 2) {
+            return null;
+        }
+
+        List<Callable<Region>> tasks = new ArrayList<>(regions);
+        for (int r = 0; r < regions; r++) {
+            int from = starts[r], to = r + 1 < regions ? starts[r + 1] : limit;
+            tasks.add(() -> scan(array, offset, from, to));
+        }
+
+        int[] bounds = new int[regions + 1];
+        int count = 0;
+        bounds[count++] = first;
+        int depth = 0; // Of the start of the region, inside the outermost array.
+        int quoted = 0; // 1 if the region starts inside a string.
+        try {
+            List<Future<Region>> scans = pool.invokeAll(tasks);
+            for (int r = 0; r < regions; r++) {
+                Region region = scans.get(r).get();
+                if (r > 0 && depth >= 0) {
+                    int comma = region.firstComma(quoted, depth);
+                    if (comma >= 0) {
+                        bounds[count++] = comma;
+                    }
+                }
+                depth += region.depths[quoted];
+                quoted ^= region.quoted;
+            }
+        } catch (ExecutionException e) {
+            throw rethrow(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+
+        if (count < 2) {
+            return null;
+        }
+        bounds[count++] = limit;
+        return Arrays.copyOf(bounds, count);
+    }
+
+    /**
+     * Scans a region for brackets and commas, for both the case that it starts
+     * outside a string and the case that it starts inside one: the bytes
+     * outside strings in one case are those inside strings in the other. A
+     * backslash always escapes the byte after it, since it is always in a
+     * string in valid JSON.
+     */
+    private Region scan(byte[] array, int offset, int from, int to) {
+        Region region = new Region();
+        int quoted = 0; // 1 inside a string, if the region starts outside one.
+        for (int i = from; i < to; i++) {
+            byte b = byteAt(array, offset, i);
+            if (b == '"') {
+                quoted ^= 1;
+            } else if (b == '\\') {
+                i++;
+            } else if (b == '{' || b == '[') {
+                region.depths[quoted]++;
+            } else if (b == '}' || b == ']') {
+                region.depths[quoted]--;
+            } else if (b == ',' && region.depths[quoted] <= 0) {
+                region.addComma(quoted, i);
+            }
+        }
+        region.quoted = quoted;
+        return region;
+    }
+
+    private byte byteAt(byte[] array, int offset, int i) {
+        return array != null ? array[offset + i] : bytes.get(i);
+    }
+
+    /**
+     * @return The array, or null if a chunk failed to parse.
+     */
+    private JsonArray parseChunks(int[] bounds) {
+        int chunks = bounds.length - 1;
+        List<Callable<JsonArray>> tasks = new ArrayList<>(chunks);
+        for (int c = 0; c < chunks; c++) {
+            int from = bounds[c], to = bounds[c + 1];
+            boolean last = c == chunks - 1;
+            tasks.add(() -> parseChunk(from, to, last));
+        }
+
+        ArrayBuilder array = new ArrayBuilder();
+        array.reset(null);
+        try {
+            for (Future<JsonArray> chunk : pool.invokeAll(tasks)) {
+                JsonArray elements = chunk.get();
+                if (elements == null) {
+                    return null;
+                }
+                array.addAll(elements);
+            }
+        } catch (ExecutionException e) {
+            if (!(e.getCause() instanceof RuntimeException)) {
+                throw rethrow(e);
+            }
+            return null; // A syntax error, which the sequential parse reports.
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        return array.build();
+    }
+
+    /**
+     * Parses the elements between two bounds. Each chunk but the first starts
+     * with the comma before its first element, and only the last one ends with
+     * the closing bracket.
+     *
+     * @return The elements, or null if the chunk does not end as it should.
+     */
+    private JsonArray parseChunk(int from, int to, boolean last) {
+        KeyCache keys = new KeyCache();
+        JsonParser parser = new JsonParser(new JsonByteLexer(bytes.slice(from, to - from)), keys);
+        parser.setMaxDepth(maxDepth); // parseElements() counts the outermost array.
+
+        TreeBuilder builder = new TreeBuilder(keys);
+        builder.startArray();
+        if (parser.parseElements(builder) != last) {
+            return null;
+        }
+        if (!last) {
+            builder.endArray();
+        }
+        return (JsonArray) builder.getRoot();
+    }
+
+    /**
+     * What the scan of a region found, indexed by whether the region starts
+     * inside a string.
+     */
+    private static final class Region {
+        final int[] depths = new int[2]; // The change in depth over the region.
+        // The first comma at each depth below the start of the region, or -1.
+        final int[][] commas = { new int[0], new int[0] };
+        int quoted; // 1 if the string state at the end differs from the start.
+
+        void addComma(int quoted, int position) {
+            int depth = -depths[quoted];
+            int[] firsts = commas[quoted];
+            if (depth >= firsts.length) {
+                int length = firsts.length;
+                firsts = commas[quoted] = Arrays.copyOf(firsts, Math.max(4, depth * 2));
+                Arrays.fill(firsts, length, firsts.length, -1);
+            }
+            if (firsts[depth] < 0) {
+                firsts[depth] = position;
+            }
+        }
+
+        /**
+         * @return The first comma at {@code depth} levels below the start of
+         *         the region, or -1.
+         */
+        int firstComma(int quoted, int depth) {
+            int[] firsts = commas[quoted];
+            return depth < firsts.length ? firsts[depth] : -1;
+        }
+    }
+
+    /**
+     * @return The exception to throw on the calling thread for a task that
+     *         failed, which is its own if it is unchecked.
+     */
+    private static RuntimeException rethrow(ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        if (cause instanceof RuntimeException) {
+            return (RuntimeException) cause;
+        }
+        return new IllegalStateException(cause);
+    }
+}
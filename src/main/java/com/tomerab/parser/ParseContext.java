@@ -0,0 +1,98 @@
+package com.tomerab.parser;
+
+import java.nio.ByteBuffer;
+
+import com.tomerab.ast.JsonObject;
+import com.tomerab.exceptions.JsonSyntaxErrorException;
+import com.tomerab.lexer.JsonByteLexer;
+import com.tomerab.lexer.KeyCache;
+
+/**
+ * The ParseContext class parses many documents one after another, such as the
+ * messages of a service, reusing everything that does not end up in the
+ * returned trees: the lexer and its structural index, the parser's stack, the
+ * builder's stacks and the buffers of numeric arrays, and the key cache, so
+ * records with the same keys share their Strings across documents.
+ *
+ * The trees themselves are not reused, since they belong to the caller once
+ * they are returned. Nulls, booleans and small integers are shared nodes in
+ * every tree, see {@link com.tomerab.ast.JsonNull#INSTANCE}.
+ *
+ * A context is not safe to use from several threads; use one per thread.
+ *
+ * <pre>
+ * ParseContext context = new ParseContext();
+ * for (byte[] message : messages) {
+ *     JsonObject json = context.parse(message);
+ * }
+ * </pre>
+ */
+public final class ParseContext {
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    private final KeyCache keys;
+    private final JsonByteLexer lexer = new JsonByteLexer(EMPTY);
+    private final JsonParser parser;
+    private TreeBuilder builder;
+
+    public ParseContext() {
+        this(new KeyCache());
+    }
+
+    /**
+     * @param keys The cache that object keys are shared through, or null to
+     *             give every key its own String.
+     */
+    public ParseContext(KeyCache keys) {
+        this.keys = keys;
+        this.parser = new JsonParser(lexer, keys);
+        this.builder = new TreeBuilder(keys);
+    }
+
+    /**
+     * @see JsonParser#setMaxDepth(int)
+     */
+    public void setMaxDepth(int maxDepth) {
+        parser.setMaxDepth(maxDepth);
+    }
+
+    /**
+     * @see JsonByteLexer#enableStructuralIndex(boolean)
+     */
+    public void enableStructuralIndex(boolean vectorized) {
+        lexer.enableStructuralIndex(vectorized);
+    }
+
+    public JsonObject parse(byte[] bytes) {
+        return parse(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * Parses the remaining bytes of a buffer. The buffer is not copied, and is
+     * no longer referenced once the method returns.
+     *
+     * @throws JsonSyntaxErrorException if the input is not a JSON object or
+     *                                  array.
+     */
+    public JsonObject parse(ByteBuffer bytes) {
+        lexer.reset(bytes);
+        try {
+            parser.parse(builder);
+            return builder.getRoot();
+        } finally {
+            builder.reset();
+            lexer.reset(EMPTY);
+        }
+    }
+
+    /**
+     * Empties the key cache and releases the buffers that grew for earlier
+     * documents, such as after an unusually large one.
+     */
+    public void reset() {
+        if (keys != null) {
+            keys.clear();
+        }
+        builder = new TreeBuilder(keys);
+    }
+}
@@ -0,0 +1,124 @@
+package com.tomerab.parser;
+
+import java.util.Arrays;
+
+import com.tomerab.lexer.JsonReader;
+import com.tomerab.lexer.JsonToken.JsonType;
+import com.tomerab.lexer.KeyCache;
+import com.tomerab.parser.JsonPath.Step;
+
+/**
+ * Passes the values that a {@link JsonPath} selects, and the containers on the
+ * way to them, on to another handler. {@link JsonParser#parse(JsonPath)} asks
+ * it whether to open each container with {@link #enters()}, and skips the
+ * containers that no path goes through.
+ */
+final class PathFilter implements JsonHandler {
+    private final JsonPath path;
+    private final JsonHandler handler;
+    private final KeyCache keys;
+
+    // The steps matching each open container, with the innermost one at
+    // depth - 1, and the index of its next element if it is an array.
+    private Step[][] frames = new Step[16][];
+    private int[] indexes = new int[16];
+    private int depth;
+    private Step[] next; // The steps matching the value of the current key.
+    private Step[] entered; // The steps matching the container being opened.
+    private int selected = -1; // The depth of the selected container being passed on whole, or -1.
+
+    PathFilter(JsonPath path, JsonHandler handler, KeyCache keys) {
+        this.path = path;
+        this.handler = handler;
+        this.keys = keys;
+    }
+
+    /**
+     * Called before a container is opened.
+     *
+     * @return Whether a path goes through the container; if not, it is
+     *         skipped without being passed to this handler.
+     */
+    boolean enters() {
+        if (selected >= 0) {
+            return true;
+        }
+        Step[] steps = depth == 0 ? path.root() : nextValue();
+        entered = steps;
+        return steps.length > 0;
+    }
+
+    @Override
+    public void startObject() {
+        push(-1);
+        handler.startObject();
+    }
+
+    @Override
+    public void endObject() {
+        pop();
+        handler.endObject();
+    }
+
+    @Override
+    public void startArray() {
+        push(0);
+        handler.startArray();
+    }
+
+    @Override
+    public void endArray() {
+        pop();
+        handler.endArray();
+    }
+
+    @Override
+    public void key(JsonReader reader) {
+        if (selected >= 0) {
+            handler.key(reader);
+            return;
+        }
+        String name = keys != null ? reader.stringValue(keys) : reader.stringValue();
+        next = Step.next(frames[depth - 1], name, -1);
+        if (next.length > 0) {
+            handler.key(reader);
+        }
+    }
+
+    @Override
+    public void value(JsonType type, JsonReader reader) {
+        if (selected >= 0 || Step.selects(nextValue())) {
+            handler.value(type, reader);
+        }
+    }
+
+    /**
+     * @return The steps matching the next value of the innermost container.
+     */
+    private Step[] nextValue() {
+        int frame = depth - 1;
+        if (indexes[frame] < 0) {
+            return next;
+        }
+        return Step.next(frames[frame], null, indexes[frame]++);
+    }
+
+    private void push(int index) {
+        if (depth == frames.length) {
+            frames = Arrays.copyOf(frames, depth * 2);
+            indexes = Arrays.copyOf(indexes, depth * 2);
+        }
+        if (selected < 0 && Step.selects(entered)) {
+            selected = depth;
+        }
+        frames[depth] = selected < 0 ? entered : null;
+        indexes[depth++] = index;
+    }
+
+    private void pop() {
+        frames[--depth] = null;
+        if (depth == selected) {
+            selected = -1;
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.tomerab.parser;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import com.tomerab.ast.CompactMap;
+import com.tomerab.ast.JsonBoolean;
+import com.tomerab.ast.JsonDecimal;
+import com.tomerab.ast.JsonInteger;
+import com.tomerab.ast.JsonMap;
+import com.tomerab.ast.JsonNull;
+import com.tomerab.ast.JsonObject;
+import com.tomerab.ast.JsonString;
+import com.tomerab.lexer.JsonReader;
+import com.tomerab.lexer.JsonToken.JsonType;
+import com.tomerab.lexer.KeyCache;
+
+/**
+ * Builds the {@link JsonObject} tree that {@link JsonParser#parse()} returns.
+ * Objects are added to their parent when they are opened, and filled in as
+ * their values arrive. Arrays are collected by an {@link ArrayBuilder} and
+ * added when they are closed, once it is known whether they are numeric.
+ */
+final class TreeBuilder implements JsonHandler {
+    private final KeyCache keys;
+    private final LazyParser document; // Creates the nested containers of a parseLevel(), or null.
+
+    // The open containers, with the innermost one at depth - 1.
+    private Object[] containers = new Object[16]; // A Map for objects, an ArrayBuilder for arrays.
+    private ArrayBuilder[] arrays = new ArrayBuilder[16]; // Reused by the arrays at each depth.
+    private int depth;
+    private String key; // The name of the property whose value is next.
+    private JsonObject root;
+
+    TreeBuilder(KeyCache keys) {
+        this(keys, null);
+    }
+
+    /**
+     * Creates a builder for {@link JsonParser#parseLevel(JsonHandler)}, which
+     * turns the containers it skips into lazy nodes of {@code document}.
+     */
+    TreeBuilder(KeyCache keys, LazyParser document) {
+        this.keys = keys;
+        this.document = document;
+    }
+
+    JsonObject getRoot() {
+        return root;
+    }
+
+    /**
+     * Prepares the builder for another document, keeping the buffers of its
+     * array builders.
+     */
+    void reset() {
+        Arrays.fill(containers, 0, depth, null);
+        depth = 0;
+        key = null;
+        root = null;
+    }
+
+    @Override
+    public void startObject() {
+        Map<String, JsonObject> map = new CompactMap();
+        attach(new JsonMap(map));
+        push(map);
+    }
+
+    @Override
+    public void endObject() {
+        containers[--depth] = null;
+    }
+
+    @Override
+    public void startArray() {
+        if (depth == containers.length) {
+            grow();
+        }
+        ArrayBuilder arr = arrays[depth];
+        if (arr == null) {
+            arr = arrays[depth] = new ArrayBuilder();
+        }
+        arr.reset(key);
+        push(arr);
+    }
+
+    @Override
+    public void endArray() {
+        ArrayBuilder arr = (ArrayBuilder) containers[--depth];
+        containers[depth] = null;
+        key = arr.key;
+        attach(arr.build());
+    }
+
+    @Override
+    public void key(JsonReader reader) {
+        key = keys != null ? reader.stringValue(keys) : reader.stringValue();
+    }
+
+    @Override
+    public void value(JsonType type, JsonReader reader) {
+        if (depth > 0 && containers[depth - 1] instanceof ArrayBuilder) {
+            ArrayBuilder arr = (ArrayBuilder) containers[depth - 1];
+            if (type == JsonType.NUMBER_INTEGER && reader.fitsLong()) {
+                arr.addLong(reader.longValue());
+                return;
+            }
+            if (type == JsonType.NUMBER_DECIMAL) {
+                arr.addDecimal(reader.numberText());
+                return;
+            }
+        }
+        attach(parseValue(type, reader));
+    }
+
+    /**
+     * Creates the scalar value of the current token, or the lazy node of a
+     * skipped container.
+     */
+    private JsonObject parseValue(JsonType type, JsonReader reader) {
+        switch (type) {
+            case OBJ_OPEN:
+                return new LazyMap(document, reader.tokenStart());
+            case ARR_OPEN:
+                return new LazyArray(document, reader.tokenStart());
+            case STRING:
+                // Strings keep their source text and are only decoded when
+                // their value is needed.
+                return new JsonString(reader.stringSource(), reader.hasEscapes());
+            case NUMBER_DECIMAL:
+                return new JsonDecimal(reader.numberText());
+            case NUMBER_INTEGER:
+                // Integers of up to 18 digits are parsed straight into a long,
+                // longer ones keep their text until their value is needed.
+                return reader.fitsLong() ? JsonInteger.valueOf(reader.longValue()) : new JsonInteger(reader.numberText());
+            case BOOLEAN:
+                return JsonBoolean.valueOf(reader.booleanValue());
+            default:
+                return JsonNull.INSTANCE;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void attach(JsonObject value) {
+        if (depth == 0) {
+            root = value;
+            return;
+        }
+
+        Object container = containers[depth - 1];
+        if (container instanceof Map) {
+            ((Map<String, JsonObject>) container).put(key, value);
+        } else {
+            ((ArrayBuilder) container).add(value);
+        }
+    }
+
+    private void push(Object container) {
+        if (depth == containers.length) {
+            grow();
+        }
+        containers[depth++] = container;
+    }
+
+    private void grow() {
+        containers = Arrays.copyOf(containers, depth * 2);
+        arrays = Arrays.copyOf(arrays, depth * 2);
+    }
+}
@@ -0,0 +1,357 @@
+package com.tomerab.tape;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+import com.tomerab.ast.JsonBoolean;
+import com.tomerab.ast.JsonDecimal;
+import com.tomerab.ast.JsonInteger;
+import com.tomerab.ast.JsonMap;
+import com.tomerab.ast.JsonArray;
+import com.tomerab.ast.JsonNull;
+import com.tomerab.ast.JsonObject;
+import com.tomerab.ast.JsonString;
+import com.tomerab.lexer.JsonLexer;
+import com.tomerab.lexer.JsonToken.JsonType;
+import com.tomerab.lexer.JsonTokenizer;
+import com.tomerab.parser.JsonParser;
+
+/**
+ * The JsonTape class holds a parsed document as a flat array of longs rather
+ * than a tree of objects, in the spirit of simdjson's tape.
+ *
+ * Every value is one word on the tape, in document order: the top byte is its
+ * tag and the rest its payload. The words of a container sit between its
+ * start and end words; the start word records the index of the end word, so a
+ * whole container can be skipped in one step, and how many values (or
+ * properties) it has. Object keys are strings on the tape, each followed by
+ * its value. Integers that fit in a long take a second word holding the value.
+ * The text of strings and of other numbers is kept in a side buffer of chars.
+ *
+ * Values are addressed by their index on the tape; the root is at
+ * {@link #root()}. An object keeps every property as it was written,
+ * duplicate keys included: {@link #get(int, String)} finds the first of them,
+ * where the tree that {@link JsonParser} builds keeps the value of the last.
+ *
+ * <pre>
+ * JsonTape tape = JsonTape.parse(new JsonByteLexer(bytes));
+ * int user = tape.get(tape.root(), "user");
+ * String name = tape.getString(tape.get(user, "name"));
+ * </pre>
+ */
+public final class JsonTape {
+    static final int OBJECT = 1, OBJECT_END = 2, ARRAY = 3, ARRAY_END = 4, STRING = 5, LONG = 6, BIG_INTEGER = 7,
+            DECIMAL = 8, TRUE = 9, FALSE = 10, NULL = 11;
+
+    static final long PAYLOAD_MASK = (1L << 56) - 1;
+    static final int MAX_COUNT = (1 << 24) - 1; // Larger counts are saturated.
+    static final int ESCAPED = 0x8000; // Flag in the first header char of a string.
+
+    final long[] tape;
+    final int length;
+    final char[] text;
+
+    JsonTape(long[] tape, int length, char[] text) {
+        this.tape = tape;
+        this.length = length;
+        this.text = text;
+    }
+
+    /**
+     * Parses a document onto a tape.
+     *
+     * @throws com.tomerab.exceptions.JsonSyntaxErrorException if the input is
+     *                                                         not a JSON object
+     *                                                         or array.
+     */
+    public static JsonTape parse(JsonTokenizer lexer) {
+        return parse(new JsonParser(lexer, null));
+    }
+
+    /**
+     * Parses a document onto a tape through a configured parser.
+     */
+    public static JsonTape parse(JsonParser parser) {
+        TapeBuilder builder = new TapeBuilder();
+        parser.parse(builder);
+        return builder.build();
+    }
+
+    /**
+     * @return The index of the root object or array.
+     */
+    public int root() {
+        return 0;
+    }
+
+    /**
+     * @return The number of words on the tape.
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * @return The type of the value at {@code index}: {@link JsonType#OBJ_OPEN}
+     *         for objects and {@link JsonType#ARR_OPEN} for arrays.
+     */
+    public JsonType getType(int index) {
+        switch (tag(index)) {
+            case OBJECT:
+                return JsonType.OBJ_OPEN;
+            case ARRAY:
+                return JsonType.ARR_OPEN;
+            case STRING:
+                return JsonType.STRING;
+            case LONG, BIG_INTEGER:
+                return JsonType.NUMBER_INTEGER;
+            case DECIMAL:
+                return JsonType.NUMBER_DECIMAL;
+            case TRUE, FALSE:
+                return JsonType.BOOLEAN;
+            case NULL:
+                return JsonType.NULL;
+            default:
+                throw new IllegalArgumentException("No value at index " + index);
+        }
+    }
+
+    /**
+     * @return The number of elements of an array, or of properties of an
+     *         object.
+     */
+    public int size(int container) {
+        requireContainer(container);
+        int count = (int) (tape[container] >>> 32) & MAX_COUNT;
+        if (count < MAX_COUNT) {
+            return count;
+        }
+
+        count = 0;
+        for (int i = first(container); i >= 0; i = next(i)) {
+            count++;
+        }
+        return tag(container) == OBJECT ? count / 2 : count;
+    }
+
+    /**
+     * @return The index of the first value of a container, which is the first
+     *         key for objects, or -1 if the container is empty.
+     */
+    public int first(int container) {
+        requireContainer(container);
+        int i = container + 1;
+        return isEnd(i) ? -1 : i;
+    }
+
+    /**
+     * @return The index of the value that follows the one at {@code index} in
+     *         its container, or -1 if it is the last one. In objects keys and
+     *         values alternate.
+     */
+    public int next(int index) {
+        int i;
+        switch (tag(index)) {
+            case OBJECT, ARRAY -> i = end(index) + 1;
+            case LONG -> i = index + 2;
+            default -> i = index + 1;
+        }
+        return i < length && !isEnd(i) ? i : -1;
+    }
+
+    /**
+     * @return The index of the value of the property {@code key} of an object,
+     *         or -1 if there is none. The properties are searched in order.
+     */
+    public int get(int object, String key) {
+        if (tag(object) != OBJECT) {
+            throw new IllegalArgumentException("Not an object at index " + object);
+        }
+        for (int i = first(object); i >= 0; i = next(next(i))) {
+            if (keyEquals(i, key)) {
+                return i + 1;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * @return The index of element {@code n} of an array, or -1 if the array
+     *         is shorter.
+     */
+    public int get(int array, int n) {
+        if (tag(array) != ARRAY) {
+            throw new IllegalArgumentException("Not an array at index " + array);
+        }
+        int i = first(array);
+        for (int k = 0; k < n && i >= 0; k++) {
+            i = next(i);
+        }
+
+        return n < 0 ? -1 : i;
+    }
+
+    /**
+     * @return The decoded value of a string.
+     */
+    public String getString(int index) {
+        String source = getSource(index);
+        return hasEscapes(index) ? JsonLexer.unescape(source) : source;
+    }
+
+    /**
+     * @return The text of a string as it was written between its quotes.
+     */
+    public String getSource(int index) {
+        requireTag(index, STRING);
+        int offset = (int) payload(index);
+        return new String(text, offset + 2, textLength(offset));
+    }
+
+    /**
+     * @return Whether a string has escapes, tabs or newlines to decode.
+     */
+    public boolean hasEscapes(int index) {
+        requireTag(index, STRING);
+        return (text[(int) payload(index)] & ESCAPED) != 0;
+    }
+
+    /**
+     * @return Whether an integer is held as a long.
+     */
+    public boolean isLong(int index) {
+        return tag(index) == LONG;
+    }
+
+    /**
+     * @throws ArithmeticException if the integer does not fit in a long.
+     */
+    public long getLong(int index) {
+        if (tag(index) == LONG) {
+            return tape[index + 1];
+        }
+        return getInteger(index).longValueExact();
+    }
+
+    public BigInteger getInteger(int index) {
+        if (tag(index) == LONG) {
+            return BigInteger.valueOf(tape[index + 1]);
+        }
+        requireTag(index, BIG_INTEGER);
+        return new BigInteger(getNumberText(index));
+    }
+
+    public BigDecimal getDecimal(int index) {
+        return new BigDecimal(getNumberText(index));
+    }
+
+    /**
+     * @return The number as it was written in the input.
+     */
+    public String getNumberText(int index) {
+        int tag = tag(index);
+        if (tag == LONG) {
+            return Long.toString(tape[index + 1]);
+        }
+        if (tag != BIG_INTEGER && tag != DECIMAL) {
+            throw new IllegalArgumentException("Not a number at index " + index);
+        }
+        int offset = (int) payload(index);
+        return new String(text, offset + 2, textLength(offset));
+    }
+
+    public boolean getBoolean(int index) {
+        int tag = tag(index);
+        if (tag != TRUE && tag != FALSE) {
+            throw new IllegalArgumentException("Not a boolean at index " + index);
+        }
+        return tag == TRUE;
+    }
+
+    /**
+     * Creates a {@link JsonObject} view of the value at {@code index}. Objects
+     * and arrays are views backed by the tape, whose members are only created
+     * when they are accessed.
+     */
+    public JsonObject toObject(int index) {
+        switch (tag(index)) {
+            case OBJECT:
+                return new JsonMap(new TapeMap(this, index));
+            case ARRAY:
+                return new JsonArray(new TapeList(this, index));
+            case STRING:
+                return new JsonString(getSource(index), hasEscapes(index));
+            case LONG:
+                return JsonInteger.valueOf(tape[index + 1]);
+            case BIG_INTEGER:
+                return new JsonInteger(getNumberText(index));
+            case DECIMAL:
+                return new JsonDecimal(getNumberText(index));
+            case TRUE:
+                return JsonBoolean.TRUE;
+            case FALSE:
+                return JsonBoolean.FALSE;
+            case NULL:
+                return JsonNull.INSTANCE;
+            default:
+                throw new IllegalArgumentException("No value at index " + index);
+        }
+    }
+
+    int tag(int index) {
+        return (int) (tape[index] >>> 56);
+    }
+
+    long payload(int index) {
+        return tape[index] & PAYLOAD_MASK;
+    }
+
+    /**
+     * @return The index of the end word of a container.
+     */
+    int end(int container) {
+        return (int) payload(container);
+    }
+
+    private boolean isEnd(int index) {
+        int tag = tag(index);
+        return tag == OBJECT_END || tag == ARRAY_END;
+    }
+
+    private int textLength(int offset) {
+        return ((text[offset] & ~ESCAPED) << 16) | text[offset + 1];
+    }
+
+    boolean keyEquals(int index, String key) {
+        if (hasEscapes(index)) {
+            return getString(index).equals(key);
+        }
+
+        int offset = (int) payload(index);
+        int len = textLength(offset);
+        if (len != key.length()) {
+            return false;
+        }
+        for (int i = 0; i < len; i++) {
+            if (text[offset + 2 + i] != key.charAt(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private void requireContainer(int index) {
+        int tag = tag(index);
+        if (tag != OBJECT && tag != ARRAY) {
+            throw new IllegalArgumentException("Not a container at index " + index);
+        }
+    }
+
+    private void requireTag(int index, int tag) {
+        if (tag(index) != tag) {
+            throw new IllegalArgumentException("Unexpected value at index " + index);
+        }
+    }
+}
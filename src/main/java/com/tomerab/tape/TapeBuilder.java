@@ -0,0 +1,144 @@
+package com.tomerab.tape;
+
+import static com.tomerab.tape.JsonTape.*;
+
+import java.util.Arrays;
+
+import com.tomerab.lexer.JsonReader;
+import com.tomerab.lexer.JsonToken.JsonType;
+import com.tomerab.parser.JsonHandler;
+
+/**
+ * Writes the values the parser reports onto a {@link JsonTape}. The start word
+ * of a container is filled in when the container is closed, once its end index
+ * and count are known.
+ */
+final class TapeBuilder implements JsonHandler {
+    private long[] tape = new long[1024];
+    private int length;
+    private char[] text = new char[4096];
+    private int textLength;
+
+    // The tape indices of the open containers, and the count of each.
+    private int[] starts = new int[16];
+    private int[] counts = new int[16];
+    private int depth;
+
+    JsonTape build() {
+        // Drop the slack left by growing the buffers.
+        return new JsonTape(Arrays.copyOf(tape, length), length, Arrays.copyOf(text, textLength));
+    }
+
+    @Override
+    public void startObject() {
+        start(OBJECT);
+    }
+
+    @Override
+    public void endObject() {
+        end(OBJECT_END);
+    }
+
+    @Override
+    public void startArray() {
+        start(ARRAY);
+    }
+
+    @Override
+    public void endArray() {
+        end(ARRAY_END);
+    }
+
+    @Override
+    public void key(JsonReader reader) {
+        // Objects count their properties, so the value that follows is not
+        // counted again.
+        counts[depth - 1]++;
+        add(STRING, addText(reader.stringSource(), reader.hasEscapes()));
+    }
+
+    @Override
+    public void value(JsonType type, JsonReader reader) {
+        countValue();
+        switch (type) {
+            case STRING:
+                add(STRING, addText(reader.stringSource(), reader.hasEscapes()));
+                break;
+            case NUMBER_INTEGER:
+                if (reader.fitsLong()) {
+                    add(LONG, 0);
+                    add(reader.longValue());
+                } else {
+                    add(BIG_INTEGER, addText(reader.numberText(), false));
+                }
+                break;
+            case NUMBER_DECIMAL:
+                add(DECIMAL, addText(reader.numberText(), false));
+                break;
+            case BOOLEAN:
+                add(reader.booleanValue() ? TRUE : FALSE, 0);
+                break;
+            default:
+                add(NULL, 0);
+        }
+    }
+
+    private void start(int tag) {
+        countValue();
+        if (depth == starts.length) {
+            starts = Arrays.copyOf(starts, depth * 2);
+            counts = Arrays.copyOf(counts, depth * 2);
+        }
+        starts[depth] = length;
+        counts[depth++] = 0;
+        add(tag, 0);
+    }
+
+    private void end(int tag) {
+        int start = starts[--depth];
+        long count = Math.min(counts[depth], MAX_COUNT);
+        tape[start] |= count << 32 | length;
+        add(tag, start);
+    }
+
+    /**
+     * Counts a new element of the enclosing array. Values of objects were
+     * counted with their key.
+     */
+    private void countValue() {
+        if (depth > 0 && (tape[starts[depth - 1]] >>> 56) == ARRAY) {
+            counts[depth - 1]++;
+        }
+    }
+
+    private void add(int tag, long payload) {
+        add((long) tag << 56 | payload);
+    }
+
+    private void add(long word) {
+        if (length == tape.length) {
+            tape = Arrays.copyOf(tape, length * 2);
+        }
+        tape[length++] = word;
+    }
+
+    /**
+     * Appends a length header and the text to the side buffer.
+     *
+     * @return The offset of the header.
+     */
+    private int addText(String str, boolean escaped) {
+        int len = str.length();
+        int needed = textLength + 2 + len;
+        if (needed > text.length) {
+            text = Arrays.copyOf(text, Math.max(needed, text.length * 2));
+        }
+
+        int offset = textLength;
+        text[offset] = (char) (len >>> 16 | (escaped ? ESCAPED : 0));
+        text[offset + 1] = (char) len;
+        str.getChars(0, len, text, offset + 2);
+        textLength = needed;
+        return offset;
+    }
+}
@@ -0,0 +1,44 @@
+package com.tomerab.tape;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+import com.tomerab.ast.JsonObject;
+
+/**
+ * A read-only view of an array on a {@link JsonTape}. The tape index of each
+ * element is found on the first access by position, and elements are created
+ * as they are accessed.
+ */
+final class TapeList extends AbstractList<JsonObject> implements RandomAccess {
+    private final JsonTape tape;
+    private final int array;
+    private int[] elements; // Tape indices, filled in lazily.
+
+    TapeList(JsonTape tape, int array) {
+        this.tape = tape;
+        this.array = array;
+    }
+
+    @Override
+    public int size() {
+        return tape.size(array);
+    }
+
+    @Override
+    public JsonObject get(int index) {
+        if (elements == null) {
+            int[] indices = new int[size()];
+            int n = 0;
+            for (int i = tape.first(array); i >= 0; i = tape.next(i)) {
+                indices[n++] = i;
+            }
+            elements = indices;
+        }
+        if (index < 0 || index >= elements.length) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + elements.length);
+        }
+
+        return tape.toObject(elements[index]);
+    }
+}
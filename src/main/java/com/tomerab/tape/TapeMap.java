@@ -0,0 +1,77 @@
+package com.tomerab.tape;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import com.tomerab.ast.JsonObject;
+
+/**
+ * A read-only view of an object on a {@link JsonTape}. Lookups search the
+ * properties in order, and values are created as they are accessed. Like the
+ * tape, the view keeps every property of an object with duplicate keys, so
+ * its entries hold each of them and a lookup finds the first.
+ */
+final class TapeMap extends AbstractMap<String, JsonObject> {
+    private final JsonTape tape;
+    private final int object;
+
+    TapeMap(JsonTape tape, int object) {
+        this.tape = tape;
+        this.object = object;
+    }
+
+    @Override
+    public int size() {
+        return tape.size(object);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof String && tape.get(object, (String) key) >= 0;
+    }
+
+    @Override
+    public JsonObject get(Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        int value = tape.get(object, (String) key);
+        return value >= 0 ? tape.toObject(value) : null;
+    }
+
+    @Override
+    public Set<Entry<String, JsonObject>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public int size() {
+                return tape.size(object);
+            }
+
+            @Override
+            public Iterator<Entry<String, JsonObject>> iterator() {
+                return new Iterator<>() {
+                    private int key = tape.first(object);
+
+                    @Override
+                    public boolean hasNext() {
+                        return key >= 0;
+                    }
+
+                    @Override
+                    public Entry<String, JsonObject> next() {
+                        if (key < 0) {
+                            throw new NoSuchElementException();
+                        }
+                        Entry<String, JsonObject> entry = new SimpleImmutableEntry<>(tape.getString(key),
+                                tape.toObject(key + 1));
+                        key = tape.next(key + 1);
+                        return entry;
+                    }
+                };
+            }
+        };
+    }
+}
@@ -0,0 +1,145 @@
+package com.tomerab.visitor;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The AppendableSink class buffers output in a char array and appends it to an
+ * {@link Appendable} whenever the array fills up, such as {@code System.out},
+ * a {@link Writer} for a file or socket, or a {@link StringBuilder}. Flushing
+ * the sink also flushes the destination if it is {@link Flushable}.
+ *
+ * <pre>
+ * OutputSink out = new AppendableSink(System.out);
+ * json.accept(new JsonPrettyPrintVisitor(2, out));
+ * </pre>
+ */
+public class AppendableSink implements OutputSink {
+    private static final int DEFAULT_CAPACITY = 32 * 1024;
+    private static final int MAX_LONG_LENGTH = 20; // "-9223372036854775808"
+
+    private final Appendable out;
+    private final char[] buf;
+    private int pos;
+
+    public AppendableSink(Appendable out) {
+        this(out, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity The number of chars buffered before they are appended
+     *                 to the destination.
+     */
+    public AppendableSink(Appendable out, int capacity) {
+        if (capacity < MAX_LONG_LENGTH) {
+            throw new IllegalArgumentException("Capacity must be at least " + MAX_LONG_LENGTH + ": " + capacity);
+        }
+        this.out = out;
+        this.buf = new char[capacity];
+    }
+
+    @Override
+    public void write(char c) {
+        if (pos == buf.length) {
+            drain();
+        }
+        buf[pos++] = c;
+    }
+
+    @Override
+    public void write(String str) {
+        int len = str.length();
+        if (len > buf.length - pos) {
+            drain();
+            if (len > buf.length) {
+                // Too long to buffer, so it is appended as it is.
+                append(str);
+                return;
+            }
+        }
+        str.getChars(0, len, buf, pos);
+        pos += len;
+    }
+
+    @Override
+    public void write(long value) {
+        if (value == Long.MIN_VALUE) {
+            write(Long.toString(value)); // Cannot be negated.
+            return;
+        }
+        if (buf.length - pos < MAX_LONG_LENGTH) {
+            drain();
+        }
+        if (value < 0) {
+            buf[pos++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long rest = value / 10; rest != 0; rest /= 10) {
+            digits++;
+        }
+        pos += digits;
+        int i = pos;
+        do {
+            buf[--i] = (char) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+    }
+
+    @Override
+    public void writeAscii(byte[] ascii) {
+        if (ascii.length > buf.length - pos) {
+            drain();
+            if (ascii.length > buf.length) {
+                append(new String(ascii, StandardCharsets.US_ASCII));
+                return;
+            }
+        }
+        for (byte b : ascii) {
+            buf[pos++] = (char) b;
+        }
+    }
+
+    @Override
+    public void flush() {
+        drain();
+        if (out instanceof Flushable) {
+            try {
+                ((Flushable) out).flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Appends the buffered chars to the destination, and empties the buffer.
+     */
+    private void drain() {
+        if (pos == 0) {
+            return;
+        }
+        try {
+            if (out instanceof Writer) {
+                ((Writer) out).write(buf, 0, pos);
+            } else {
+                out.append(CharBuffer.wrap(buf, 0, pos));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        pos = 0;
+    }
+
+    private void append(String str) {
+        try {
+            out.append(str);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package com.tomerab.visitor;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * The ChannelSink class encodes output as UTF-8 bytes, and writes them to a
+ * channel through a direct {@link ByteBuffer} whenever its buffer fills up,
+ * such as to a {@link FileChannel} or to standard output:
+ *
+ * <pre>
+ * try (ChannelSink out = new ChannelSink(new FileOutputStream(FileDescriptor.out).getChannel())) {
+ *     json.accept(new JsonPrettyPrintVisitor(2, out));
+ * }
+ * </pre>
+ *
+ * Text is encoded into a byte array, which the JIT fills much faster than the
+ * checked puts of a direct buffer, and each full block is copied into the
+ * direct buffer in one go to be written. Text that is already encoded, such as
+ * the punctuation and colors of the printers, and spans of raw input are
+ * copied as they are.
+ *
+ * The buffers of the default capacity are taken from a pool shared by all
+ * sinks, and returned to it by {@link #close()}, which leaves the channel
+ * open.
+ */
+public class ChannelSink implements OutputSink, AutoCloseable {
+    private static final int DEFAULT_CAPACITY = 64 * 1024;
+    private static final int MIN_CAPACITY = 64;
+    private static final Queue<Buffers> POOL = new ConcurrentLinkedQueue<>();
+
+    private final WritableByteChannel channel;
+    private final int capacity;
+    private Buffers buffers;
+    private byte[] bytes;
+    private int pos;
+
+    public ChannelSink(WritableByteChannel channel) {
+        this(channel, pooled());
+    }
+
+    /**
+     * @param capacity The number of bytes buffered before they are written to
+     *                 the channel. Buffers of other than the default capacity
+     *                 are not pooled.
+     */
+    public ChannelSink(WritableByteChannel channel, int capacity) {
+        this(channel, new Buffers(checkCapacity(capacity)));
+    }
+
+    private ChannelSink(WritableByteChannel channel, Buffers buffers) {
+        this.channel = channel;
+        this.buffers = buffers;
+        this.bytes = buffers.bytes;
+        this.capacity = bytes.length;
+    }
+
+    private static Buffers pooled() {
+        Buffers buffers = POOL.poll();
+        return buffers != null ? buffers : new Buffers(DEFAULT_CAPACITY);
+    }
+
+    private static int checkCapacity(int capacity) {
+        if (capacity < MIN_CAPACITY) {
+            throw new IllegalArgumentException("Capacity must be at least " + MIN_CAPACITY + ": " + capacity);
+        }
+        return capacity;
+    }
+
+    @Override
+    public void write(char c) {
+        if (c >= 0x80) {
+            write(String.valueOf(c));
+            return;
+        }
+        if (pos == capacity) {
+            drain();
+        }
+        bytes[pos++] = (byte) c;
+    }
+
+    @Override
+    public void write(String str) {
+        int len = str.length();
+        int i = 0;
+        while (i < len) {
+            if (capacity - pos < 4) {
+                drain();
+            }
+            // A char takes up to 3 bytes, and a surrogate pair 4 for its two,
+            // so the pair that may end past the limit needs one byte more.
+            int limit = Math.min(len, i + (capacity - pos - 1) / 3);
+            for (; i < limit; i++) {
+                char c = str.charAt(i);
+                if (c < 0x80) {
+                    bytes[pos++] = (byte) c;
+                } else if (c < 0x800) {
+                    bytes[pos++] = (byte) (0xC0 | c >> 6);
+                    bytes[pos++] = (byte) (0x80 | c & 0x3F);
+                } else if (!Character.isSurrogate(c)) {
+                    bytes[pos++] = (byte) (0xE0 | c >> 12);
+                    bytes[pos++] = (byte) (0x80 | c >> 6 & 0x3F);
+                    bytes[pos++] = (byte) (0x80 | c & 0x3F);
+                } else if (Character.isHighSurrogate(c) && i + 1 < len
+                        && Character.isLowSurrogate(str.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(c, str.charAt(++i));
+                    bytes[pos++] = (byte) (0xF0 | cp >> 18);
+                    bytes[pos++] = (byte) (0x80 | cp >> 12 & 0x3F);
+                    bytes[pos++] = (byte) (0x80 | cp >> 6 & 0x3F);
+                    bytes[pos++] = (byte) (0x80 | cp & 0x3F);
+                } else {
+                    bytes[pos++] = '?'; // An unpaired surrogate, replaced as the JDK's encoder does.
+                }
+            }
+        }
+    }
+
+    @Override
+    public void write(long value) {
+        if (value == Long.MIN_VALUE) {
+            write(Long.toString(value)); // Cannot be negated.
+            return;
+        }
+        if (capacity - pos < 20) {
+            drain();
+        }
+        if (value < 0) {
+            bytes[pos++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long rest = value / 10; rest != 0; rest /= 10) {
+            digits++;
+        }
+        pos += digits;
+        int i = pos;
+        do {
+            bytes[--i] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+    }
+
+    @Override
+    public void writeAscii(byte[] ascii) {
+        if (ascii.length > capacity - pos) {
+            drain();
+            if (ascii.length > capacity) {
+                writeFully(ByteBuffer.wrap(ascii));
+                return;
+            }
+        }
+        System.arraycopy(ascii, 0, bytes, pos, ascii.length);
+        pos += ascii.length;
+    }
+
+    /**
+     * Writes the remaining bytes of a buffer as they are, such as a span of
+     * input that is already UTF-8, and moves its position to its limit.
+     */
+    public void write(ByteBuffer span) {
+        int len = span.remaining();
+        if (len > capacity - pos) {
+            drain();
+            if (len > capacity) {
+                writeFully(span);
+                return;
+            }
+        }
+        span.get(bytes, pos, len);
+        pos += len;
+    }
+
+    @Override
+    public void flush() {
+        drain();
+    }
+
+    /**
+     * Flushes the sink and returns its buffers to the pool. The channel is
+     * left open, and the sink cannot be used any more.
+     */
+    @Override
+    public void close() {
+        if (buffers == null) {
+            return;
+        }
+        try {
+            drain();
+        } finally {
+            if (capacity == DEFAULT_CAPACITY) {
+                POOL.offer(buffers);
+            }
+            buffers = null;
+            bytes = null;
+        }
+    }
+
+    /**
+     * Writes the buffered bytes to the channel, and empties the buffer.
+     */
+    private void drain() {
+        if (pos == 0) {
+            return;
+        }
+        ByteBuffer direct = buffers.direct.clear();
+        direct.put(bytes, 0, pos).flip();
+        pos = 0;
+        writeFully(direct);
+    }
+
+    private void writeFully(ByteBuffer buf) {
+        try {
+            while (buf.hasRemaining()) {
+                channel.write(buf);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * The array that a sink encodes into, and the direct buffer of the same
+     * capacity that it is written to the channel from.
+     */
+    private static final class Buffers {
+        final byte[] bytes;
+        final ByteBuffer direct;
+
+        Buffers(int capacity) {
+            bytes = new byte[capacity];
+            direct = ByteBuffer.allocateDirect(capacity);
+        }
+    }
+}
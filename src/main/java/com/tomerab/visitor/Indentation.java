@@ -0,0 +1,41 @@
+package com.tomerab.visitor;
+
+import java.util.Arrays;
+
+/**
+ * Writes the indentation of each depth for a printer in one write, from a
+ * cache of the encoded prefixes of the depths it has printed. The cache is
+ * owned by one printer, so it is not shared between threads.
+ */
+final class Indentation {
+    // Deeper prefixes are written as several of the deepest cached one,
+    // rather than caching arrays that grow with the square of the depth.
+    private static final int MAX_CACHED_DEPTH = 64;
+
+    private final byte[][] prefixes = new byte[MAX_CACHED_DEPTH + 1][];
+    private final int spacingLvl;
+
+    Indentation(int spacingLvl) {
+        this.spacingLvl = spacingLvl;
+    }
+
+    void write(OutputSink out, int depth) {
+        while (depth > MAX_CACHED_DEPTH) {
+            out.writeAscii(prefix(MAX_CACHED_DEPTH));
+            depth -= MAX_CACHED_DEPTH;
+        }
+        if (depth > 0) {
+            out.writeAscii(prefix(depth));
+        }
+    }
+
+    private byte[] prefix(int depth) {
+        byte[] prefix = prefixes[depth];
+        if (prefix == null) {
+            prefix = new byte[spacingLvl * depth];
+            Arrays.fill(prefix, (byte) ' ');
+            prefixes[depth] = prefix;
+        }
+        return prefix;
+    }
+}
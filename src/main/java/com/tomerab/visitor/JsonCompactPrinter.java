@@ -0,0 +1,242 @@
+package com.tomerab.visitor;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+import com.tomerab.lexer.JsonByteLexer;
+import com.tomerab.lexer.JsonLexer;
+import com.tomerab.lexer.JsonReader;
+import com.tomerab.lexer.JsonToken.JsonType;
+import com.tomerab.lexer.JsonTokenizer;
+import com.tomerab.lexer.KeyCache;
+import com.tomerab.parser.JsonHandler;
+import com.tomerab.parser.JsonParser;
+
+/**
+ * The JsonCompactPrinter class prints a document without the whitespace
+ * between its tokens, straight from the input bytes. The tokens that follow
+ * each other without whitespace are copied as one run, so the output is
+ * written in a few large copies. Only runs of up to {@link #MAX_RUN} bytes are
+ * kept in memory, and a run of a mapped file that is longer than the sink's
+ * buffer is written from the mapping without being copied into it.
+ *
+ * The document is checked by a {@link JsonParser} as it is copied, so a syntax
+ * error is thrown after the output before it has been written. The tokens are
+ * copied as they were written, so strings keep their escapes and numbers
+ * their form, and the sink is flushed once each document is printed. The
+ * parser lets commas without a value on one side through, as in "[1,]" and
+ * "{,}", so those are dropped to keep the output valid JSON.
+ * Containers that a parser skips are copied as they are, whitespace included.
+ *
+ * <pre>
+ * try (ChannelSink out = new ChannelSink(FileChannel.open(path, WRITE, CREATE))) {
+ *     new JsonCompactPrinter(out).print(new JsonByteLexer(input));
+ * }
+ * </pre>
+ */
+public class JsonCompactPrinter {
+    /**
+     * The longest run of input that is kept before it is copied.
+     */
+    public static final int MAX_RUN = 1 << 20;
+
+    private static final JsonHandler CHECK_ONLY = new JsonHandler() {
+        @Override
+        public void startObject() {
+        }
+
+        @Override
+        public void endObject() {
+        }
+
+        @Override
+        public void startArray() {
+        }
+
+        @Override
+        public void endArray() {
+        }
+
+        @Override
+        public void key(JsonReader reader) {
+        }
+
+        @Override
+        public void value(JsonType type, JsonReader reader) {
+        }
+    };
+
+    private final ChannelSink out;
+    private Runs runs; // The runs of the last input, which are kept for its next document.
+    private JsonParser parser;
+
+    public JsonCompactPrinter(ChannelSink out) {
+        this.out = out;
+    }
+
+    /**
+     * Prints the next document of the input.
+     *
+     * @throws com.tomerab.exceptions.JsonSyntaxErrorException if the input is
+     *                                                         not a JSON
+     *                                                         object or array.
+     */
+    public void print(JsonByteLexer lexer) {
+        if (runs == null || runs.lexer != lexer) {
+            runs = new Runs(lexer, out);
+            parser = new JsonParser(runs, null); // Nothing reads the keys.
+        }
+        runs.reset();
+        try {
+            parser.parse(CHECK_ONLY);
+            runs.copy();
+        } finally {
+            lexer.keepFrom(-1);
+        }
+        out.flush();
+    }
+
+    /**
+     * Passes the tokens of the lexer on to the parser, copying the input in
+     * runs of tokens that are not separated by whitespace, except for the
+     * commas that are left out of them.
+     */
+    private static final class Runs implements JsonTokenizer {
+        private final JsonByteLexer lexer;
+        private final ChannelSink out;
+        private long runStart = -1;
+        private long runEnd = -1;
+        private JsonType last; // The last token copied, and where it starts.
+        private long lastStart;
+
+        Runs(JsonByteLexer lexer, ChannelSink out) {
+            this.lexer = lexer;
+            this.out = out;
+        }
+
+        @Override
+        public JsonType nextToken() {
+            JsonType type = lexer.nextToken();
+            if (type == null) {
+                return null;
+            }
+
+            long start = lexer.tokenStart();
+            if (type == JsonType.COMMA && (last == JsonType.COMMA || last == JsonType.OBJ_OPEN
+                    || last == JsonType.ARR_OPEN)) {
+                return type; // No value before it, so the run ends before it.
+            }
+            if ((type == JsonType.OBJ_CLOSE || type == JsonType.ARR_CLOSE) && last == JsonType.COMMA) {
+                runEnd = lastStart; // No value after the comma, so the run ends before it.
+            }
+            if (start != runEnd || start - runStart >= MAX_RUN) {
+                copy();
+                runStart = start;
+                lexer.keepFrom(start);
+            }
+            runEnd = lexer.tokenEnd();
+            last = type;
+            lastStart = start;
+            return type;
+        }
+
+        void reset() {
+            runStart = runEnd = -1;
+            last = null;
+        }
+
+        /**
+         * Copies the current run, up to the end of the last token read.
+         */
+        void copy() {
+            if (runStart < runEnd) {
+                out.write(lexer.span(runStart, runEnd));
+            }
+            runStart = runEnd;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return lexer.hasNext();
+        }
+
+        @Override
+        public long tokenStart() {
+            return lexer.tokenStart();
+        }
+
+        @Override
+        public long tokenEnd() {
+            return lexer.tokenEnd();
+        }
+
+        @Override
+        public String stringValue() {
+            return lexer.stringValue();
+        }
+
+        @Override
+        public String stringValue(KeyCache keys) {
+            return lexer.stringValue(keys);
+        }
+
+        @Override
+        public String stringSource() {
+            return lexer.stringSource();
+        }
+
+        @Override
+        public boolean hasEscapes() {
+            return lexer.hasEscapes();
+        }
+
+        @Override
+        public boolean booleanValue() {
+            return lexer.booleanValue();
+        }
+
+        @Override
+        public boolean fitsLong() {
+            return lexer.fitsLong();
+        }
+
+        @Override
+        public long longValue() {
+            return lexer.longValue();
+        }
+
+        @Override
+        public BigInteger integerValue() {
+            return lexer.integerValue();
+        }
+
+        @Override
+        public BigDecimal decimalValue() {
+            return lexer.decimalValue();
+        }
+
+        @Override
+        public String numberText() {
+            return lexer.numberText();
+        }
+
+        @Override
+        public JsonLexer.Cursor getCursor() {
+            return lexer.getCursor();
+        }
+
+        /**
+         * Skips the container, which stays part of the run of its opening
+         * bracket, so it is copied as it is.
+         */
+        @Override
+        public JsonType skipContainer() {
+            JsonType type = lexer.skipContainer();
+            if (type != null) {
+                runEnd = lexer.tokenEnd();
+                last = type;
+            }
+            return type;
+        }
+    }
+}
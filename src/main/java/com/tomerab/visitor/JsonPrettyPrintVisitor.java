@@ -1,14 +1,17 @@
 package com.tomerab.visitor;
 
-import java.math.BigDecimal;
-import java.math.BigInteger;
-import java.util.List;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.Map;
 
+import com.tomerab.ast.CompactMap;
 import com.tomerab.ast.JsonArray;
 import com.tomerab.ast.JsonBoolean;
 import com.tomerab.ast.JsonDecimal;
+import com.tomerab.ast.JsonDoubleArray;
 import com.tomerab.ast.JsonInteger;
+import com.tomerab.ast.JsonLongArray;
 import com.tomerab.ast.JsonMap;
 import com.tomerab.ast.JsonNull;
 import com.tomerab.ast.JsonObject;
@@ -24,16 +27,29 @@ import com.tomerab.ast.JsonString;
  * When visiting a JSON map, the class prints the map in a formatted way, with
  * indentation and color coding.
  * When visiting a JSON array, the class prints the array in a formatted way,
- * with indentation.
- * When visiting a JSON string, the class prints the string in green color.
+ * with indentation. Arrays of longs and doubles are printed straight from
+ * their primitive elements.
+ * When visiting a JSON string, the class prints the string in green color,
+ * as it was written in the source.
  * When visiting a JSON boolean, the class prints the boolean value in yellow
  * color.
- * When visiting a JSON number, the class prints the number in magenta color.
+ * When visiting a JSON number, the class prints the number in magenta color,
+ * as it was written in the source.
  * When visiting a JSON null value, the class prints "null" in yellow color.
  * 
  * The class also provides a constructor that accepts a spacing level parameter,
  * which determines the indentation level for the pretty printing.
  * 
+ * The output is written to an {@link OutputSink}, which is standard output
+ * unless another one is given, and the sink is flushed once the value the
+ * visitor was first passed to is printed.
+ * 
+ * Maps and arrays are printed with a stack of the open containers rather than
+ * by recursing into them, so a value nested as deeply as the parser allows
+ * prints without overflowing the call stack.
+ * 
+ * A visitor keeps the state of the value it is printing, so each thread
+ * printing at the same time needs its own visitor and sink.
  * 
  * <pre>
  * JsonPrettyPrintVisitor visitor = new JsonPrettyPrintVisitor(2);
@@ -42,95 +58,239 @@ import com.tomerab.ast.JsonString;
  * </pre>
  */
 public class JsonPrettyPrintVisitor implements JsonVisitor {
-    private static int indentLevel = 0;
-    private static String INDENT = " ";
-
     // ANSI escape codes for colors
-    private static final String RESET = "\033[0m";
-    private static final String GREEN = "\033[0;32m";
-    private static final String CYAN = "\033[0;36m";
-    private static final String YELLOW = "\033[0;33m";
-    private static final String MAGENTA = "\033[0;35m";
+    static final String RESET = "\033[0m";
+    static final String GREEN = "\033[0;32m";
+    static final String CYAN = "\033[0;36m";
+    static final String YELLOW = "\033[0;33m";
+    static final String MAGENTA = "\033[0;35m";
+
+    // The output around values, encoded once for the sinks to copy.
+    static final byte[] OPEN_OBJECT = ascii("{\n");
+    static final byte[] OPEN_ARRAY = ascii("[\n");
+    static final byte[] NEXT = ascii(",\n");
+    static final byte[] KEY_START = ascii(CYAN + "\"");
+    static final byte[] KEY_END = ascii("\":" + RESET + " ");
+    static final byte[] STRING_START = ascii(GREEN + "\"");
+    static final byte[] STRING_END = ascii("\"" + RESET);
+    static final byte[] NUMBER_START = ascii(MAGENTA);
+    static final byte[] NUMBER_END = ascii(RESET);
+    static final byte[] TRUE = ascii(YELLOW + "true" + RESET);
+    static final byte[] FALSE = ascii(YELLOW + "false" + RESET);
+    static final byte[] NULL = ascii(YELLOW + "null" + RESET);
+
+    private final Indentation indent;
+    private final OutputSink out;
+    private int indentLevel;
+
+    // The open maps and arrays, innermost at indentLevel - 1: a CompactMap
+    // read by index, or an iterator over the entries or elements, whether it
+    // is a map, and the index of its next value. Only the outermost
+    // container's visit walks the stack; the visits of the ones nested in it
+    // only push them.
+    private Object[] containers = new Object[16];
+    private boolean[] objects = new boolean[16];
+    private int[] next = new int[16];
+    private boolean walking;
 
     public JsonPrettyPrintVisitor(int spacingLvl) {
-        INDENT = INDENT.repeat(spacingLvl);
+        this(spacingLvl, new AppendableSink(System.out));
+    }
+
+    public JsonPrettyPrintVisitor(int spacingLvl, OutputSink out) {
+        this.indent = new Indentation(spacingLvl);
+        this.out = out;
     }
 
     @Override
     public void visit(JsonMap map) {
         Map<String, JsonObject> entries = map.getValue();
 
-        System.out.print("{\n");
+        out.writeAscii(OPEN_OBJECT);
+        // Read the flat entries in place rather than through Map.Entry
+        // objects.
+        push(entries instanceof CompactMap ? entries : entries.entrySet().iterator(), true);
+        walk();
+    }
+
+    @Override
+    public void visit(JsonArray array) {
+        out.writeAscii(OPEN_ARRAY);
+        push(array.getValue().iterator(), false);
+        walk();
+    }
+
+    @Override
+    public void visit(JsonLongArray array) {
+        out.writeAscii(OPEN_ARRAY);
         indentLevel++;
-        boolean first = true;
-        for (Map.Entry<String, JsonObject> entry : entries.entrySet()) {
-            if (!first) {
-                System.out.print(",\n");
+        for (int i = 0; i < array.size(); i++) {
+            if (i > 0) {
+                out.writeAscii(NEXT);
             }
             printIndent();
-            System.out.print(CYAN + "\"" + entry.getKey() + "\":" + RESET + " ");
-            entry.getValue().accept(this);
-            first = false;
+            out.writeAscii(NUMBER_START);
+            out.write(array.getLong(i));
+            out.writeAscii(NUMBER_END);
         }
         indentLevel--;
-        System.out.print("\n");
+        out.write('\n');
         printIndent();
-        System.out.print("}");
+        out.write(']');
+        done();
     }
 
     @Override
-    public void visit(JsonArray array) {
-        List<JsonObject> elements = array.getValue();
-
-        System.out.print("[\n");
+    public void visit(JsonDoubleArray array) {
+        out.writeAscii(OPEN_ARRAY);
         indentLevel++;
-        boolean first = true;
-        for (JsonObject element : elements) {
-            if (!first) {
-                System.out.print(",\n");
+        for (int i = 0; i < array.size(); i++) {
+            if (i > 0) {
+                out.writeAscii(NEXT);
             }
             printIndent();
-            element.accept(this);
-            first = false;
+            out.writeAscii(NUMBER_START);
+            out.write(array.getText(i));
+            out.writeAscii(NUMBER_END);
         }
         indentLevel--;
-        System.out.print("\n");
+        out.write('\n');
         printIndent();
-        System.out.print("]");
+        out.write(']');
+        done();
     }
 
     @Override
     public void visit(JsonString string) {
-        String str = string.getValue();
-        System.out.print(GREEN + "\"" + str + "\"" + RESET);
+        // Strings are written as they were read, without decoding them.
+        String str = string.getSource();
+        if (string.hasEscapes()) {
+            str = str.replace("\n", "\\n").replace("\t", "\\t");
+        }
+        out.writeAscii(STRING_START);
+        out.write(str);
+        out.writeAscii(STRING_END);
+        done();
     }
 
     @Override
     public void visit(JsonBoolean bool) {
-        boolean boolVal = bool.getValue();
-        System.out.print(YELLOW + boolVal + RESET);
+        out.writeAscii(bool.getValue() ? TRUE : FALSE);
+        done();
     }
 
     @Override
     public void visit(JsonDecimal decimal) {
-        BigDecimal decimalVal = decimal.getValue();
-        System.out.print(MAGENTA + decimalVal + RESET);
+        out.writeAscii(NUMBER_START);
+        out.write(decimal.getText());
+        out.writeAscii(NUMBER_END);
+        done();
     }
 
     @Override
     public void visit(JsonInteger integer) {
-        BigInteger integerVal = integer.getValue();
-        System.out.print(MAGENTA + integerVal + RESET);
+        out.writeAscii(NUMBER_START);
+        out.write(integer.getText());
+        out.writeAscii(NUMBER_END);
+        done();
     }
 
     @Override
     public void visit(JsonNull jsonNull) {
-        System.out.print(YELLOW + "null" + RESET);
+        out.writeAscii(NULL);
+        done();
+    }
+
+    /**
+     * Prints the values of the open containers until the one that was opened
+     * first is closed. The containers opened on the way are pushed by their
+     * visits and printed by this loop, which only the outermost visit runs.
+     */
+    @SuppressWarnings("unchecked")
+    private void walk() {
+        if (walking) {
+            return;
+        }
+        walking = true;
+        int outer = indentLevel - 1;
+        try {
+            while (indentLevel > outer) {
+                int top = indentLevel - 1;
+                Object container = containers[top];
+                int i = next[top]++;
+
+                if (container instanceof CompactMap) {
+                    CompactMap compact = (CompactMap) container;
+                    if (i == compact.size()) {
+                        close('}');
+                    } else {
+                        printEntry(i == 0, compact.keyAt(i), compact.valueAt(i));
+                    }
+                } else if (!((Iterator<?>) container).hasNext()) {
+                    close(objects[top] ? '}' : ']');
+                } else if (objects[top]) {
+                    Map.Entry<String, JsonObject> entry = ((Iterator<Map.Entry<String, JsonObject>>) container).next();
+                    printEntry(i == 0, entry.getKey(), entry.getValue());
+                } else {
+                    if (i > 0) {
+                        out.writeAscii(NEXT);
+                    }
+                    printIndent();
+                    ((Iterator<JsonObject>) container).next().accept(this);
+                }
+            }
+        } finally {
+            walking = false;
+            while (indentLevel > outer) { // Only after an error.
+                containers[--indentLevel] = null;
+            }
+        }
+        done();
+    }
+
+    private void printEntry(boolean first, String key, JsonObject value) {
+        if (!first) {
+            out.writeAscii(NEXT);
+        }
+        printIndent();
+        out.writeAscii(KEY_START);
+        out.write(key);
+        out.writeAscii(KEY_END);
+        value.accept(this);
+    }
+
+    private void push(Object container, boolean object) {
+        if (indentLevel == containers.length) {
+            containers = Arrays.copyOf(containers, indentLevel * 2);
+            objects = Arrays.copyOf(objects, indentLevel * 2);
+            next = Arrays.copyOf(next, indentLevel * 2);
+        }
+        containers[indentLevel] = container;
+        objects[indentLevel] = object;
+        next[indentLevel++] = 0;
+    }
+
+    private void close(char bracket) {
+        containers[--indentLevel] = null;
+        out.write('\n');
+        printIndent();
+        out.write(bracket);
     }
 
     private void printIndent() {
-        for (int i = 0; i < indentLevel; i++) {
-            System.out.print(INDENT);
+        indent.write(out, indentLevel);
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Flushes the sink once the outermost value is printed.
+     */
+    private void done() {
+        if (indentLevel == 0) {
+            out.flush();
         }
     }
 }
@@ -0,0 +1,181 @@
+package com.tomerab.visitor;
+
+import static com.tomerab.visitor.JsonPrettyPrintVisitor.*;
+
+import com.tomerab.lexer.JsonReader;
+import com.tomerab.lexer.JsonToken.JsonType;
+import com.tomerab.lexer.JsonTokenizer;
+import com.tomerab.lexer.KeyCache;
+import com.tomerab.parser.JsonHandler;
+import com.tomerab.parser.JsonParser;
+
+/**
+ * The JsonStreamPrettyPrinter class prints a document in the same format and
+ * colors as {@link JsonPrettyPrintVisitor}, straight from the tokens of the
+ * input as {@link JsonParser#parse(JsonHandler)} passes them on, without
+ * building a tree. Only the depth and whether the current container is still
+ * empty are kept, so memory does not grow with the size of the input, and
+ * each value is printed as soon as it is read.
+ *
+ * The output is the same as the visitor's, except that an object with a
+ * duplicate key prints every property, where the tree keeps one of them. A
+ * syntax error is thrown after the output before it has been written, and the
+ * sink is flushed once each document is printed.
+ *
+ * <pre>
+ * JsonStreamPrettyPrinter printer = new JsonStreamPrettyPrinter(2);
+ * while (lexer.hasNext()) {
+ *     printer.print(lexer); // Prints each document of the input in turn.
+ * }
+ * </pre>
+ *
+ * The printer is itself a {@link JsonHandler}, so it can also be passed to a
+ * parser directly, such as a {@link com.tomerab.parser.JsonPushParser}.
+ */
+public class JsonStreamPrettyPrinter implements JsonHandler {
+    private final Indentation indent;
+    private final OutputSink out;
+    private final KeyCache keys = new KeyCache();
+    private JsonTokenizer input; // The input of the parser, which is kept for its next document.
+    private JsonParser parser;
+
+    private int depth;
+    private boolean empty; // Whether nothing has been printed in the innermost container yet.
+    private boolean afterKey; // Whether the next value is the value of a property.
+
+    public JsonStreamPrettyPrinter(int spacingLvl) {
+        this(spacingLvl, new AppendableSink(System.out));
+    }
+
+    public JsonStreamPrettyPrinter(int spacingLvl, OutputSink out) {
+        this.indent = new Indentation(spacingLvl);
+        this.out = out;
+    }
+
+    /**
+     * Prints the next document of the input.
+     *
+     * @throws com.tomerab.exceptions.JsonSyntaxErrorException if the input is
+     *                                                         not a JSON
+     *                                                         object or array.
+     */
+    public void print(JsonTokenizer lexer) {
+        if (lexer != input) {
+            parser = new JsonParser(lexer, keys);
+            input = lexer;
+        }
+        depth = 0;
+        afterKey = false;
+        parser.parse(this);
+    }
+
+    @Override
+    public void startObject() {
+        open(OPEN_OBJECT);
+    }
+
+    @Override
+    public void endObject() {
+        close('}');
+    }
+
+    @Override
+    public void startArray() {
+        open(OPEN_ARRAY);
+    }
+
+    @Override
+    public void endArray() {
+        close(']');
+    }
+
+    @Override
+    public void key(JsonReader reader) {
+        separate();
+        out.writeAscii(KEY_START);
+        out.write(reader.stringValue(keys));
+        out.writeAscii(KEY_END);
+        afterKey = true;
+    }
+
+    @Override
+    public void value(JsonType type, JsonReader reader) {
+        beginValue();
+        switch (type) {
+            case STRING:
+                // Strings are written as they were read, without decoding them.
+                String str = reader.stringSource();
+                if (reader.hasEscapes()) {
+                    str = str.replace("\n", "\\n").replace("\t", "\\t");
+                }
+                out.writeAscii(STRING_START);
+                out.write(str);
+                out.writeAscii(STRING_END);
+                break;
+            case NUMBER_INTEGER:
+                // The tree keeps the integers that fit a long as longs, which
+                // print without the sign of -0.
+                out.writeAscii(NUMBER_START);
+                if (reader.fitsLong()) {
+                    out.write(reader.longValue());
+                } else {
+                    out.write(reader.numberText());
+                }
+                out.writeAscii(NUMBER_END);
+                break;
+            case NUMBER_DECIMAL:
+                out.writeAscii(NUMBER_START);
+                out.write(reader.numberText());
+                out.writeAscii(NUMBER_END);
+                break;
+            case BOOLEAN:
+                out.writeAscii(reader.booleanValue() ? TRUE : FALSE);
+                break;
+            default:
+                out.writeAscii(NULL);
+        }
+    }
+
+    private void open(byte[] bracket) {
+        beginValue();
+        out.writeAscii(bracket);
+        depth++;
+        empty = true;
+    }
+
+    private void close(char bracket) {
+        depth--;
+        out.write('\n');
+        printIndent();
+        out.write(bracket);
+        // The enclosing container holds at least this one.
+        empty = false;
+        if (depth == 0) {
+            out.flush();
+        }
+    }
+
+    /**
+     * Starts a value: a property's value follows its key, and an element
+     * follows the previous one on a new line.
+     */
+    private void beginValue() {
+        if (afterKey) {
+            afterKey = false;
+        } else if (depth > 0) {
+            separate();
+        }
+    }
+
+    private void separate() {
+        if (!empty) {
+            out.writeAscii(NEXT);
+        }
+        empty = false;
+        printIndent();
+    }
+
+    private void printIndent() {
+        indent.write(out, depth);
+    }
+}
@@ -0,0 +1,122 @@
+package com.tomerab.visitor;
+
+import static com.tomerab.visitor.JsonPrettyPrintVisitor.*;
+
+import java.util.Arrays;
+
+import com.tomerab.lexer.JsonToken.JsonType;
+import com.tomerab.tape.JsonTape;
+
+/**
+ * The JsonTapePrettyPrinter class prints a {@link JsonTape} in the same format
+ * and colors as {@link JsonPrettyPrintVisitor} prints a tree, walking the tape
+ * in order with a stack of the open containers instead of recursing. The
+ * output is written to an {@link OutputSink}, which is standard output unless
+ * another one is given, and the sink is flushed once the tape is printed.
+ * Every property of an object is printed, so an object with duplicate keys
+ * prints each of them, where the tree keeps one.
+ *
+ * <pre>
+ * JsonTape tape = JsonTape.parse(lexer);
+ * new JsonTapePrettyPrinter(2).print(tape);
+ * </pre>
+ */
+public class JsonTapePrettyPrinter {
+    private final Indentation indent;
+    private final OutputSink out;
+
+    // The open containers and the next value of each, innermost last.
+    private int[] containers = new int[16];
+    private int[] next = new int[16];
+    private int depth;
+
+    public JsonTapePrettyPrinter(int spacingLvl) {
+        this(spacingLvl, new AppendableSink(System.out));
+    }
+
+    public JsonTapePrettyPrinter(int spacingLvl, OutputSink out) {
+        this.indent = new Indentation(spacingLvl);
+        this.out = out;
+    }
+
+    public void print(JsonTape tape) {
+        depth = 0;
+        printValue(tape, tape.root());
+
+        while (depth > 0) {
+            int container = containers[depth - 1];
+            int i = next[depth - 1];
+            boolean object = tape.getType(container) == JsonType.OBJ_OPEN;
+
+            if (i < 0) {
+                depth--;
+                out.write('\n');
+                printIndent();
+                out.write(object ? '}' : ']');
+                continue;
+            }
+
+            if (i != tape.first(container)) {
+                out.writeAscii(NEXT);
+            }
+            printIndent();
+            if (object) {
+                out.writeAscii(KEY_START);
+                out.write(tape.getString(i));
+                out.writeAscii(KEY_END);
+                i++;
+            }
+            next[depth - 1] = tape.next(i);
+            printValue(tape, i);
+        }
+        out.flush();
+    }
+
+    /**
+     * Prints a scalar, or the opening of a container and pushes it.
+     */
+    private void printValue(JsonTape tape, int i) {
+        switch (tape.getType(i)) {
+            case OBJ_OPEN:
+                out.writeAscii(OPEN_OBJECT);
+                push(i, tape.first(i));
+                break;
+            case ARR_OPEN:
+                out.writeAscii(OPEN_ARRAY);
+                push(i, tape.first(i));
+                break;
+            case STRING:
+                String str = tape.getSource(i);
+                if (tape.hasEscapes(i)) {
+                    str = str.replace("\n", "\\n").replace("\t", "\\t");
+                }
+                out.writeAscii(STRING_START);
+                out.write(str);
+                out.writeAscii(STRING_END);
+                break;
+            case NUMBER_INTEGER, NUMBER_DECIMAL:
+                out.writeAscii(NUMBER_START);
+                out.write(tape.getNumberText(i));
+                out.writeAscii(NUMBER_END);
+                break;
+            case BOOLEAN:
+                out.writeAscii(tape.getBoolean(i) ? TRUE : FALSE);
+                break;
+            default:
+                out.writeAscii(NULL);
+        }
+    }
+
+    private void push(int container, int first) {
+        if (depth == containers.length) {
+            containers = Arrays.copyOf(containers, depth * 2);
+            next = Arrays.copyOf(next, depth * 2);
+        }
+        containers[depth] = container;
+        next[depth++] = first;
+    }
+
+    private void printIndent() {
+        indent.write(out, depth);
+    }
+}
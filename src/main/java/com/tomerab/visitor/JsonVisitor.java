@@ -7,6 +7,22 @@ public interface JsonVisitor {
 
     public void visit(JsonArray array);
 
+    /**
+     * Visits an array of longs. By default it is visited as an array of
+     * {@link JsonInteger} nodes.
+     */
+    public default void visit(JsonLongArray array) {
+        visit((JsonArray) array);
+    }
+
+    /**
+     * Visits an array of doubles. By default it is visited as an array of
+     * {@link JsonDecimal} and {@link JsonInteger} nodes.
+     */
+    public default void visit(JsonDoubleArray array) {
+        visit((JsonArray) array);
+    }
+
     public void visit(JsonString string);
 
     public void visit(JsonBoolean bool);
@@ -0,0 +1,35 @@
+package com.tomerab.visitor;
+
+import java.io.UncheckedIOException;
+
+/**
+ * The OutputSink interface is where the printers write their output. A sink
+ * buffers what is written to it and passes it on in large blocks, so a printer
+ * can write each piece of its output as it goes without paying for a write to
+ * the destination every time.
+ *
+ * Errors writing to the destination are thrown as
+ * {@link UncheckedIOException}s.
+ */
+public interface OutputSink {
+    void write(char c);
+
+    void write(String str);
+
+    /**
+     * Writes the decimal text of a number, as {@link Long#toString(long)}
+     * does, without creating the string.
+     */
+    void write(long value);
+
+    /**
+     * Writes ASCII text that has been encoded already, such as the punctuation
+     * and colors that the printers write around values.
+     */
+    void writeAscii(byte[] ascii);
+
+    /**
+     * Passes everything written so far on to the destination.
+     */
+    void flush();
+}
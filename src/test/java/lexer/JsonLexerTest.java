@@ -1,15 +1,32 @@
 package lexer;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import com.tomerab.lexer.JsonByteLexer;
 import com.tomerab.lexer.JsonLexer;
+import com.tomerab.lexer.JsonPushLexer;
+import com.tomerab.lexer.JsonReader;
 import com.tomerab.lexer.JsonToken;
 import com.tomerab.lexer.JsonToken.JsonType;
+import com.tomerab.lexer.JsonTokenizer;
 
 class JsonLexerTest {
     @Test
@@ -271,4 +288,338 @@ class JsonLexerTest {
         JsonLexer lexer = new JsonLexer(json);
         assertThrows(IllegalArgumentException.class, lexer::next, "Unexpected character: #");
     }
+
+    @Test
+    public void testTokenOffsets() {
+        String json = " {\"key\": [12, true]} ";
+
+        JsonLexer lexer = new JsonLexer(json);
+        long[][] expected = {
+                { 1, 2 }, // {
+                { 2, 7 }, // "key"
+                { 7, 8 }, // :
+                { 9, 10 }, // [
+                { 10, 12 }, // 12
+                { 12, 13 }, // ,
+                { 14, 18 }, // true
+                { 18, 19 }, // ]
+                { 19, 20 }, // }
+        };
+
+        int i = 0;
+        while (lexer.hasNext()) {
+            JsonToken token = lexer.next();
+            assertEquals(expected[i][0], token.getStart());
+            assertEquals(expected[i][1], token.getEnd());
+            i++;
+        }
+        assertEquals(expected.length, i);
+    }
+
+    @Test
+    public void testReaderTokensStraddleBufferBoundaries() {
+        String json = """
+                  {
+                      "a long string that does not fit": "He said, \\"Hello\\" \\u0041",
+                      "numbers": [12345678, -1.25e10, 0],
+                      "literals": [true, false, null]
+                  }
+                """;
+
+        JsonLexer expected = new JsonLexer(json);
+        JsonLexer lexer = new JsonLexer(new StringReader(json), 3);
+
+        while (expected.hasNext()) {
+            assertTrue(lexer.hasNext());
+            JsonToken expectedToken = expected.next();
+            JsonToken token = lexer.next();
+            assertTrue(testEquality(token, expectedToken));
+            assertEquals(expectedToken.getStart(), token.getStart());
+            assertEquals(expectedToken.getEnd(), token.getEnd());
+        }
+        assertFalse(lexer.hasNext());
+    }
+
+    @Test
+    public void testReaderInvalidLiteralAtEndOfInput() {
+        JsonLexer lexer = new JsonLexer(new StringReader("[tru"), 2);
+
+        lexer.next();
+        assertThrows(IllegalArgumentException.class, lexer::next, "Expected boolean got: 'tru'");
+    }
+
+    @Test
+    public void testByteLexerMatchesCharLexer() {
+        String json = """
+                  {
+                      "ascii": "Hello",
+                      "unicode": "h\u00e9llo w\u00f6rld \u2603 \u2603 \ud834\udd1e",
+                      "escapes": "tab\\t, quote \\" and \u00fcn\u00efc\u00f6d\u00e9 \\u00e9",
+                      "numbers": [1, -2.5, 3e10],
+                      "literals": [true, false, null]
+                  }
+                """;
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+
+        assertSameTokens(new JsonLexer(json), new JsonByteLexer(bytes));
+        assertSameTokens(new JsonLexer(json), new JsonByteLexer(ByteBuffer.allocateDirect(bytes.length).put(bytes).flip()));
+        assertSameTokens(new JsonLexer(json), new JsonByteLexer(new ByteArrayInputStream(bytes), 3));
+    }
+
+    @Test
+    public void testByteLexerInvalidUtf8() {
+        byte[] overlong = { '"', (byte) 0xC0, (byte) 0xAF, '"' };
+        byte[] surrogate = { '"', (byte) 0xED, (byte) 0xA0, (byte) 0x80, '"' };
+        byte[] truncated = { '"', 'a', (byte) 0xE2, (byte) 0x98, '"' };
+
+        assertThrows(IllegalArgumentException.class, new JsonByteLexer(overlong)::next);
+        assertThrows(IllegalArgumentException.class, new JsonByteLexer(surrogate)::next);
+        assertThrows(IllegalArgumentException.class, new JsonByteLexer(truncated)::next);
+
+        Exception e = assertThrows(IllegalArgumentException.class,
+                new JsonByteLexer("\uD83D\uDE00".getBytes(StandardCharsets.UTF_8))::next);
+        assertEquals("Unexpected character: \uD83D\uDE00", e.getMessage());
+    }
+
+    @Test
+    public void testMappedFileWindows(@TempDir Path dir) throws IOException {
+        String json = """
+                  {"name": "a string that is longer than a window", "values": [123456, 1.5e-3, true, null]}
+                """;
+        Path file = Files.writeString(dir.resolve("input.json"), json);
+
+        try (FileChannel channel = FileChannel.open(file)) {
+            assertSameTokens(new JsonLexer(json), new JsonByteLexer(channel, 4));
+        }
+        try (FileChannel channel = FileChannel.open(file)) {
+            assertSameTokens(new JsonLexer(json), new JsonByteLexer(channel));
+        }
+    }
+
+    @Test
+    public void testReaderPullsTokens() {
+        String json = "{\"skip\": {\"a\": [1, {}]}, \"id\": 9007199254740993, \"big\": 123456789012345678901, \"ratio\": -0.5}";
+
+        for (JsonTokenizer tokenizer : new JsonTokenizer[] { new JsonLexer(json),
+                new JsonByteLexer(json.getBytes(StandardCharsets.UTF_8)) }) {
+            JsonReader reader = new JsonReader(tokenizer);
+
+            assertEquals(JsonType.OBJ_OPEN, reader.nextToken());
+            assertEquals(JsonType.STRING, reader.nextToken());
+            assertEquals("skip", reader.stringValue());
+            assertEquals(JsonType.COLON, reader.nextToken());
+            assertEquals(JsonType.OBJ_OPEN, reader.nextToken());
+            assertEquals(JsonType.OBJ_CLOSE, reader.skipValue());
+            assertEquals(JsonType.COMMA, reader.nextToken());
+            assertEquals(JsonType.STRING, reader.nextToken());
+            assertEquals(JsonType.COLON, reader.nextToken());
+            assertEquals(JsonType.NUMBER_INTEGER, reader.nextToken());
+            assertEquals(9007199254740993L, reader.longValue());
+            reader.nextToken();
+            reader.nextToken();
+            assertEquals(JsonType.COLON, reader.nextToken());
+            assertEquals(JsonType.NUMBER_INTEGER, reader.nextToken());
+            assertEquals(new BigInteger("123456789012345678901"), reader.integerValue());
+            assertThrows(ArithmeticException.class, reader::longValue);
+            reader.nextToken();
+            reader.nextToken();
+            reader.nextToken();
+            assertEquals(JsonType.NUMBER_DECIMAL, reader.nextToken());
+            assertEquals(new BigDecimal("-0.5"), reader.decimalValue());
+            assertThrows(IllegalStateException.class, reader::stringValue);
+            assertEquals(JsonType.OBJ_CLOSE, reader.nextToken());
+            assertEquals(null, reader.nextToken());
+        }
+    }
+
+    @Test
+    public void testInvalidTokensRejectedWhenScanned() {
+        assertThrows(IllegalArgumentException.class, new JsonLexer("\"bad \\x escape\"")::nextToken);
+        assertThrows(IllegalArgumentException.class, new JsonByteLexer("\"\\u12G4\"".getBytes())::nextToken);
+        assertThrows(RuntimeException.class, new JsonLexer("1-2")::nextToken);
+        assertThrows(RuntimeException.class, new JsonByteLexer("-".getBytes())::nextToken);
+    }
+
+    @Test
+    public void testStructuralIndexMatchesScanner() {
+        // Escapes, quotes and whitespace at every offset within a 64 byte block.
+        StringBuilder json = new StringBuilder("{\n");
+        for (int i = 0; i < 200; i++) {
+            json.append(" ".repeat(i % 64)).append("\"k").append(i).append("\": [");
+            json.append("\"").append("\\\\".repeat(i % 5)).append("\\\"").append("x".repeat(i % 13)).append("\", ");
+            json.append("\"plain ").append("{}[]:,".repeat(i % 3)).append("\", ");
+            json.append(i % 2 == 0 ? "\"h\u00e9\", " : "\"tab\there\", ");
+            json.append(-i).append(",\t").append(i).append(".5e3, true,false,   null]");
+            json.append(i < 199 ? ",\r\n" : "\n");
+        }
+        byte[] bytes = json.append("}").toString().getBytes(StandardCharsets.UTF_8);
+
+        for (boolean vectorized : new boolean[] { false, true }) {
+            assertSameTokens(new JsonByteLexer(bytes), indexed(new JsonByteLexer(bytes), vectorized));
+            assertSameTokens(new JsonByteLexer(bytes),
+                    indexed(new JsonByteLexer(ByteBuffer.allocateDirect(bytes.length).put(bytes).flip()), vectorized));
+            assertSameTokens(new JsonByteLexer(bytes), indexed(new JsonByteLexer(new ByteArrayInputStream(bytes), 100), vectorized));
+
+            byte[] unterminated = "[1 \"abc".getBytes(StandardCharsets.UTF_8);
+            JsonByteLexer lexer = indexed(new JsonByteLexer(unterminated), vectorized);
+            lexer.next();
+            lexer.next();
+            Exception e = assertThrows(IllegalArgumentException.class, lexer::next);
+            assertEquals("Unterminated string: abc", e.getMessage());
+
+            lexer = indexed(new JsonByteLexer("[1   x]".getBytes(StandardCharsets.UTF_8)), vectorized);
+            lexer.next();
+            lexer.next();
+            e = assertThrows(IllegalArgumentException.class, lexer::next);
+            assertEquals("Unexpected character: x", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testCursorComputedFromOffset() {
+        String json = "{\n  \"a\": [1,\n    2],\r\n  \"b\": true\n}";
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        JsonTokenizer[] lexers = { new JsonLexer(json), new JsonLexer(new StringReader(json), 2),
+                new JsonByteLexer(bytes), new JsonByteLexer(new ByteArrayInputStream(bytes), 2) };
+
+        for (JsonTokenizer lexer : lexers) {
+            assertEquals("line 1, column 1", lexer.getCursor().toString());
+            for (int i = 0; i < 7; i++) {
+                lexer.next();
+            }
+            // After the 2 on the third line.
+            assertEquals("line 3, column 6", lexer.getCursor().toString());
+            while (lexer.next() != null) {
+            }
+            assertEquals(5, lexer.getCursor().getRow());
+            assertEquals(2, lexer.getCursor().getCol());
+        }
+    }
+
+    @Test
+    public void testSkipContainer() {
+        String json = "{\"a\": [\"]}\\\"\", {\"b\": [[]]}, 1], \"c\": 2}";
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        JsonTokenizer[] lexers = { new JsonLexer(json), new JsonLexer(new StringReader(json), 2),
+                new JsonByteLexer(bytes), new JsonByteLexer(new ByteArrayInputStream(bytes), 2) };
+
+        for (JsonTokenizer lexer : lexers) {
+            lexer.nextToken();
+            lexer.nextToken();
+            lexer.nextToken();
+            assertEquals(JsonType.ARR_OPEN, lexer.nextToken());
+            assertEquals(JsonType.ARR_CLOSE, lexer.skipContainer());
+            assertEquals(6, lexer.tokenStart());
+            assertEquals(json.indexOf(", \"c\""), lexer.tokenEnd());
+            assertEquals(JsonType.COMMA, lexer.nextToken());
+            assertEquals("c", lexer.next().getString());
+            assertThrows(IllegalStateException.class, lexer::skipContainer);
+        }
+
+        JsonTokenizer unterminated = new JsonByteLexer("[[1, \"]\"]".getBytes());
+        unterminated.nextToken();
+        assertEquals(null, unterminated.skipContainer());
+    }
+
+    @Test
+    public void testByteLexerSeek() {
+        String json = "{\"a\":\n [1, 2]}";
+        JsonByteLexer lexer = new JsonByteLexer(json.getBytes(StandardCharsets.UTF_8));
+        lexer.seek(json.indexOf('['));
+        assertEquals(JsonType.ARR_OPEN, lexer.nextToken());
+        assertEquals("line 2, column 3", lexer.getCursor().toString());
+        lexer.seek(0);
+        assertEquals(JsonType.OBJ_OPEN, lexer.nextToken());
+
+        JsonByteLexer stream = new JsonByteLexer(new ByteArrayInputStream(json.getBytes()));
+        assertThrows(IllegalStateException.class, () -> stream.seek(0));
+    }
+
+    @Test
+    public void testKeptSpan() {
+        String json = "{\"name\": \"x\", \"tags\": [1, 2, 3]}";
+        // A 4-byte buffer, so the window moves on several times while the
+        // bytes are kept.
+        JsonByteLexer lexer = new JsonByteLexer(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), 4);
+        lexer.nextToken();
+        lexer.nextToken();
+        long from = lexer.tokenStart();
+        lexer.keepFrom(from);
+        while (lexer.nextToken() != JsonType.ARR_OPEN) {
+        }
+        ByteBuffer span = lexer.span(from, lexer.tokenEnd());
+        assertEquals("\"name\": \"x\", \"tags\": [", StandardCharsets.UTF_8.decode(span).toString());
+
+        // Once other bytes are kept, the earlier ones can be dropped.
+        lexer.keepFrom(lexer.tokenStart());
+        lexer.nextToken();
+        lexer.nextToken();
+        lexer.nextToken();
+        assertThrows(IndexOutOfBoundsException.class, () -> lexer.span(from, lexer.tokenEnd()));
+    }
+
+    @Test
+    public void testPushLexer() {
+        String json = "{\"a\": [12, -3.5e2, \"b\\\"c\\u00e9\", true, null],\n \"d\": {}}";
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+
+        // Fed one byte at a time, a token is only read once it has arrived whole.
+        JsonPushLexer lexer = new JsonPushLexer();
+        JsonByteLexer expected = new JsonByteLexer(bytes);
+        for (int i = 0; i < bytes.length; i++) {
+            lexer.feed(ByteBuffer.wrap(bytes, i, 1));
+            while (lexer.hasNext()) {
+                assertTrue(expected.hasNext());
+                assertTrue(testEquality(lexer.next(), expected.next()));
+                assertEquals(expected.getCursor().toString(), lexer.getCursor().toString());
+            }
+        }
+        lexer.endOfInput();
+        assertSameTokens(expected, lexer);
+
+        // A number is only complete once the byte after it, or the end of the
+        // input, has arrived.
+        JsonPushLexer number = new JsonPushLexer();
+        number.feed(ByteBuffer.wrap("[1, 23".getBytes()));
+        assertEquals(JsonType.ARR_OPEN, number.nextToken());
+        assertEquals(JsonType.NUMBER_INTEGER, number.nextToken());
+        assertEquals(JsonType.COMMA, number.nextToken());
+        assertFalse(number.hasNext());
+        number.feed(ByteBuffer.wrap("4".getBytes()));
+        assertFalse(number.hasNext());
+        number.endOfInput();
+        assertEquals(JsonType.NUMBER_INTEGER, number.nextToken());
+        assertEquals(234, number.longValue());
+        assertFalse(number.hasNext());
+        assertThrows(IllegalStateException.class, () -> number.feed(ByteBuffer.allocate(1)));
+
+        // A container is only skipped once its closing bracket has arrived.
+        JsonPushLexer skipped = new JsonPushLexer();
+        skipped.feed(ByteBuffer.wrap("[{\"a]\": [1, \"\\\"".getBytes()));
+        assertEquals(JsonType.ARR_OPEN, skipped.nextToken());
+        assertEquals(JsonType.OBJ_OPEN, skipped.nextToken());
+        assertNull(skipped.skipContainer());
+        skipped.feed(ByteBuffer.wrap("}\"]".getBytes()));
+        assertNull(skipped.skipContainer());
+        skipped.feed(ByteBuffer.wrap("}, 2]".getBytes()));
+        assertEquals(JsonType.OBJ_CLOSE, skipped.skipContainer());
+        assertEquals(1, skipped.tokenStart());
+        assertEquals(19, skipped.tokenEnd());
+        assertThrows(IllegalStateException.class, skipped::skipContainer);
+        assertEquals(JsonType.COMMA, skipped.nextToken());
+        assertEquals(JsonType.NUMBER_INTEGER, skipped.nextToken());
+    }
+
+    private static JsonByteLexer indexed(JsonByteLexer lexer, boolean vectorized) {
+        lexer.enableStructuralIndex(vectorized);
+        return lexer;
+    }
+
+    private void assertSameTokens(JsonTokenizer expected, JsonTokenizer actual) {
+        while (expected.hasNext()) {
+            assertTrue(actual.hasNext());
+            assertTrue(testEquality(actual.next(), expected.next()));
+        }
+        assertFalse(actual.hasNext());
+    }
 }
@@ -1,10 +1,17 @@
 package parser;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -14,14 +21,32 @@ import org.junit.jupiter.api.Test;
 import com.tomerab.ast.JsonArray;
 import com.tomerab.ast.JsonBoolean;
 import com.tomerab.ast.JsonDecimal;
+import com.tomerab.ast.JsonDoubleArray;
 import com.tomerab.ast.JsonInteger;
+import com.tomerab.ast.JsonLongArray;
 import com.tomerab.ast.JsonMap;
 import com.tomerab.ast.JsonNull;
+import com.tomerab.ast.JsonNumber;
 import com.tomerab.ast.JsonObject;
 import com.tomerab.ast.JsonString;
 import com.tomerab.exceptions.JsonSyntaxErrorException;
+import com.tomerab.lexer.JsonByteLexer;
 import com.tomerab.lexer.JsonLexer;
+import com.tomerab.lexer.JsonReader;
+import com.tomerab.lexer.JsonToken.JsonType;
+import com.tomerab.lexer.JsonTokenizer;
+import com.tomerab.lexer.KeyCache;
+import com.tomerab.parser.JsonHandler;
 import com.tomerab.parser.JsonParser;
+import com.tomerab.parser.JsonPath;
+import com.tomerab.parser.JsonPushParser;
+import com.tomerab.parser.LazyParser;
+import com.tomerab.parser.ParallelParser;
+import com.tomerab.parser.ParseContext;
+import com.tomerab.tape.JsonTape;
+import com.tomerab.visitor.AppendableSink;
+import com.tomerab.visitor.JsonPrettyPrintVisitor;
+import com.tomerab.visitor.JsonTapePrettyPrinter;
 
 public class JsonParserTest {
     // Todo(tomer): Add test for error handling
@@ -200,8 +225,421 @@ public class JsonParserTest {
         assertThrows(JsonSyntaxErrorException.class, parser::parse);
     }
 
+    @Test
+    public void testNumbersKeepTheirSource() {
+        String json = "[42, -9007199254740993, 123456789012345678901, 2.50, -1.5e-3, 1E400]";
+        JsonLexer lexer = new JsonLexer(json);
+        JsonParser parser = new JsonParser(lexer);
+        List<JsonObject> values = parser.parse().getValue();
+
+        JsonInteger small = (JsonInteger) values.get(0);
+        assertTrue(small.isLong());
+        assertEquals(42, small.longValue());
+
+        assertEquals(-9007199254740993L, ((JsonInteger) values.get(1)).longValue());
+
+        JsonInteger big = (JsonInteger) values.get(2);
+        assertFalse(big.isLong());
+        assertEquals("123456789012345678901", big.getText());
+        assertEquals(new BigInteger("123456789012345678901"), big.getValue());
+        assertThrows(ArithmeticException.class, big::longValue);
+
+        assertEquals("2.50", ((JsonDecimal) values.get(3)).getText());
+        assertEquals("-1.5e-3", ((JsonDecimal) values.get(4)).getText());
+        assertEquals(new BigDecimal("-1.5e-3"), ((JsonDecimal) values.get(4)).getValue());
+        assertEquals(Double.POSITIVE_INFINITY, ((JsonDecimal) values.get(5)).doubleValue());
+    }
+
+    @Test
+    public void testDecimalDoubleValue() {
+        String[] decimals = { "0.1", "-2.5", "3.14159265358979", "1e22", "1e23", "123456789.123456789",
+                "4.9e-324", "0.000001", "-0.0", "9007199254740993.0", "1.7976931348623157e308" };
+
+        for (String decimal : decimals) {
+            assertEquals(Double.parseDouble(decimal), new JsonDecimal(decimal).doubleValue(), decimal);
+        }
+    }
+
+    @Test
+    public void testNumericArrays() {
+        String json = "[[1, -2, 3], [0.5, -0.05, 2, 10.250, -0.0], [1, 2.5, 1e3], [1, \"a\"],"
+                + " [9007199254740993, 0.5], [01.5, 123456789.1234567]]";
+        List<JsonObject> arrays = new JsonParser(new JsonLexer(json)).parse().getValue();
+
+        JsonLongArray longs = (JsonLongArray) arrays.get(0);
+        assertEquals(3, longs.size());
+        assertEquals(-2, longs.getLong(1));
+        assertEquals(-2, ((JsonInteger) longs.getValue().get(1)).longValue());
+
+        JsonDoubleArray doubles = (JsonDoubleArray) arrays.get(1);
+        assertEquals(-0.05, doubles.getDouble(1));
+        assertTrue(doubles.isInteger(2));
+        String[] texts = { "0.5", "-0.05", "2", "10.250", "-0.0" };
+        for (int i = 0; i < texts.length; i++) {
+            assertEquals(texts[i], doubles.getText(i));
+            assertEquals(texts[i], ((JsonNumber) doubles.getValue().get(i)).getText());
+        }
+
+        // Elements that do not fit turn the array into nodes, keeping the
+        // elements before them.
+        for (int i = 2; i < arrays.size(); i++) {
+            assertEquals(JsonArray.class, arrays.get(i).getClass());
+        }
+        assertEquals("2.5", ((JsonDecimal) ((JsonArray) arrays.get(2)).getValue().get(1)).getText());
+        assertEquals("1e3", ((JsonDecimal) ((JsonArray) arrays.get(2)).getValue().get(2)).getText());
+        assertEquals(9007199254740993L, ((JsonInteger) ((JsonArray) arrays.get(4)).getValue().get(0)).longValue());
+        assertEquals("01.5", ((JsonDecimal) ((JsonArray) arrays.get(5)).getValue().get(0)).getText());
+    }
+
+    @Test
+    public void testStringsKeepTheirSource() {
+        String json = "[\"plain\", \"q\\\"uote \\u00e9\", \"tab\there\"]";
+        List<JsonObject> values = new JsonParser(new JsonByteLexer(json.getBytes(StandardCharsets.UTF_8))).parse()
+                .getValue();
+
+        JsonString plain = (JsonString) values.get(0);
+        assertFalse(plain.hasEscapes());
+        assertEquals("plain", plain.getSource());
+        assertSame(plain.getSource(), plain.getValue());
+
+        JsonString escaped = (JsonString) values.get(1);
+        assertTrue(escaped.hasEscapes());
+        assertEquals("q\\\"uote \\u00e9", escaped.getSource());
+        assertEquals("q\"uote \u00e9", escaped.getValue());
+
+        assertEquals("tab\\there", ((JsonString) values.get(2)).getValue());
+    }
+
+    @Test
+    public void testDeeplyNested() {
+        int depth = 200_000;
+        String json = "{\"a\": [".repeat(depth / 2) + "1" + "]}".repeat(depth / 2);
+
+        JsonObject node = new JsonParser(new JsonLexer(json)).parse();
+        for (int i = 0; i < depth / 2; i++) {
+            JsonMap map = (JsonMap) node;
+            JsonArray arr = (JsonArray) map.getValue().get("a");
+            node = arr.getValue().get(0);
+        }
+        assertEquals(1L, ((JsonInteger) node).longValue());
+
+        node = new JsonParser(new JsonLexer("[".repeat(100) + "1" + "]".repeat(100))).parse();
+        for (int i = 0; i < 99; i++) {
+            node = ((JsonArray) node).getValue().get(0);
+        }
+        assertEquals(1L, ((JsonLongArray) node).getLong(0));
+
+        JsonParser parser = new JsonParser(new JsonLexer("[[[[1]]]]"));
+        parser.setMaxDepth(3);
+        Exception e = assertThrows(JsonSyntaxErrorException.class, parser::parse);
+        assertEquals("Maximum nesting depth of 3 exceeded, at: line 1, column 5", e.getMessage());
+
+        e = assertThrows(JsonSyntaxErrorException.class, new JsonParser(new JsonLexer("[[1], {\"a\": [2}]"))::parse);
+        assertEquals("Expected ',' or ']' after array element, at: line 1, column 16", e.getMessage());
+    }
+
+    @Test
+    public void testPrettyPrintDeeplyNested() {
+        int depth = 100_000;
+        String json = "{\"a\": [".repeat(depth / 2) + "[], {}, [1], 2.5" + "]}".repeat(depth / 2);
+
+        // The tree prints as the tape, which is printed without recursing.
+        StringBuilder fromTape = new StringBuilder();
+        new JsonTapePrettyPrinter(0, new AppendableSink(fromTape)).print(JsonTape.parse(new JsonLexer(json)));
+        StringBuilder fromTree = new StringBuilder();
+        new JsonParser(new JsonLexer(json)).parse().accept(new JsonPrettyPrintVisitor(0, new AppendableSink(fromTree)));
+
+        assertEquals(fromTape.toString(), fromTree.toString());
+    }
+
+    @Test
+    public void testSyntaxErrorMessages() {
+        String[][] cases = {
+                { "", "Unexpected end of input" },
+                { "1", "Expected object or array at the beginning" },
+                { "{\"a\"", "Unexpected end of input when expecting token: COLON" },
+                { "{\"a\" 1}", "Expected ':' after property name, at: line 1, column 7" },
+                { "{\"a\":", "Unexpected end of input while parsing value" },
+                { "{\"a\":}", "Unexpected token while parsing value, at: line 1, column 7" },
+                { "{\"a\":1 \"b\"}", "Expected ',' or '}' after property value in object, at: line 1, column 11" },
+                { "{1}", "Unexpected token in object, at: line 1, column 3" },
+                { "{\"a\":1,", "Unterminated object, at: line 1, column 8" },
+                { "[}", "Unexpected token in array, at: line 1, column 3" },
+                { "[1 2]", "Expected ',' or ']' after array element, at: line 1, column 5" },
+                { "[1", "Unterminated array, at: line 1, column 3" },
+        };
+
+        for (String[] c : cases) {
+            JsonParser parser = new JsonParser(new JsonLexer(c[0]));
+            Exception e = assertThrows(JsonSyntaxErrorException.class, parser::parse, c[0]);
+            assertEquals(c[1], e.getMessage(), c[0]);
+        }
+
+        // Stray commas are tolerated.
+        assertEquals(List.of(), new JsonParser(new JsonLexer("[,]")).parse().getValue());
+        assertEquals(1, ((Map<?, ?>) new JsonParser(new JsonLexer("{,\"a\": 1,}")).parse().getValue()).size());
+    }
+
+    @Test
+    public void testLazyParser() {
+        String json = "{\"user\": {\"name\": \"Jo\", \"tags\": [\"a\", {\"b\": null}]}, \"values\": [1, 2.5],"
+                + " \"broken\": {\"x\": tru}}";
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+
+        JsonObject lazy = new LazyParser(bytes).parse();
+        Map<String, JsonObject> root = lazy.getValue();
+        Map<String, JsonObject> user = root.get("user").getValue();
+        assertEquals("Jo", user.get("name").getValue());
+        List<JsonObject> tags = user.get("tags").getValue();
+        assertTrue(((Map<?, ?>) tags.get(1).getValue()).containsKey("b"));
+        assertEquals("2.5", ((JsonDecimal) ((List<?>) root.get("values").getValue()).get(1)).getText());
+
+        // Errors are only found in the containers that are parsed.
+        Exception e = assertThrows(IllegalArgumentException.class, () -> root.get("broken").getValue());
+        assertTrue(e.getMessage().startsWith("Expected boolean"));
+        e = assertThrows(JsonSyntaxErrorException.class, new LazyParser("{\"a\": [1 2]}".getBytes())
+                .parse().<Map<String, JsonObject>>getValue().get("a")::getValue);
+        assertEquals("Expected ',' or ']' after array element, at: line 1, column 11", e.getMessage());
+        assertThrows(JsonSyntaxErrorException.class, () -> new LazyParser("  1".getBytes()).parse());
+    }
+
+    @Test
+    public void testParseContext() {
+        ParseContext context = new ParseContext();
+        Map<String, JsonObject> first = context.parse("{\"id\": 1, \"ok\": true, \"v\": [1, 2.5]}".getBytes())
+                .getValue();
+        assertThrows(JsonSyntaxErrorException.class, () -> context.parse("{\"id\": [1 2]}".getBytes()));
+        Map<String, JsonObject> second = context.parse("{\"id\": 2, \"ok\": true, \"n\": null}".getBytes())
+                .getValue();
+
+        // Earlier documents are not touched by later ones.
+        assertEquals(BigInteger.ONE, first.get("id").getValue());
+        assertEquals(List.of(BigInteger.ONE, new BigDecimal("2.5")),
+                first.get("v").<List<JsonObject>>getValue().stream().map(JsonObject::getValue).toList());
+        assertEquals(BigInteger.TWO, second.get("id").getValue());
+        assertSame(first.keySet().iterator().next(), second.keySet().iterator().next());
+        assertSame(first.get("ok"), second.get("ok"));
+        assertSame(JsonNull.INSTANCE, second.get("n"));
+    }
+
+    @Test
+    public void testParallelParser() {
+        StringBuilder json = new StringBuilder(" [");
+        for (int i = 0; i < 200; i++) {
+            json.append(i > 0 ? ", " : "").append("{\"id\": ").append(i).append(", \"name\": \"a,\\\"]").append(i)
+                    .append("\", \"v\": [").append(i).append(", [\"},\\\\\"]]}");
+        }
+        json.append("]");
+        String[] inputs = { json.toString(), "[1, 2, 3, 4, 5, 6, 7, 8, 9, 10.5, 11]", "[1, 2, 3,, 4, 5, 6, 7]",
+                "[1, 2, 3, 4, {\"a\": 5}]", "{\"a\": [1, 2, 3, 4, 5, 6]}", "[1.5, -0.25, 3, 4, 5, 6, 7.125]",
+                "[1, 9007199254740993, 3, 4.5, 5.5]", "[1.5, 2.5, \"a\", 3.5, 4.5, 5]" };
+        for (String input : inputs) {
+            ParallelParser parallel = new ParallelParser(input.getBytes(StandardCharsets.UTF_8));
+            parallel.setChunkSize(4);
+            JsonObject expected = new JsonParser(new JsonLexer(input)).parse();
+            assertTrue(testEquality(expected, parallel.parse()), input);
+            assertEquals(expected.getClass(), parallel.parse().getClass());
+        }
+
+        // Errors are reported as the sequential parser reports them.
+        String[] broken = { "[1, 2, 3, 4 5, 6, 7]", "[1, 2, {\"a\": 3}, [4}, 5, 6]", "[1, 2, 3, 4, 5, 6",
+                "[\"a\", \"b\", \"c\", tru, \"d\"]", "[[1], [2], [3], [[4]], [5]]" };
+        for (String input : broken) {
+            ParallelParser parallel = new ParallelParser(input.getBytes(StandardCharsets.UTF_8));
+            parallel.setChunkSize(4);
+            parallel.setMaxDepth(2);
+            JsonParser sequential = new JsonParser(new JsonLexer(input));
+            sequential.setMaxDepth(2);
+            assertEquals(assertThrows(RuntimeException.class, sequential::parse).getMessage(),
+                    assertThrows(RuntimeException.class, parallel::parse).getMessage(), input);
+        }
+    }
+
+    @Test
+    public void testPathSelection() {
+        String json = "{\"meta\": {\"version\": 3, \"notes\": [1, 2]}, \"skipped\": {\"x\": [1, tru]},"
+                + " \"items\": [{\"id\": 1, \"tags\": [\"a\"]}, {\"id\": 2, \"tags\": [\"b\", \"c\"]}, {\"tags\": []}],"
+                + " \"a.b\": 4}";
+        JsonPath path = JsonPath.compile("$.items[*].id", "$.meta.version", "$.items[1].tags", "$['a.b']");
+        Map<String, JsonObject> root = new JsonParser(new JsonLexer(json)).parse(path).getValue();
+
+        assertEquals(List.of("meta", "items", "a.b"), new ArrayList<>(root.keySet()));
+        assertEquals(Map.of("version", BigInteger.valueOf(3)), toValues(root.get("meta")));
+        assertEquals(List.of(Map.of("id", BigInteger.ONE), Map.of("id", BigInteger.TWO, "tags", List.of("b", "c")),
+                Map.of()), toValues(root.get("items")));
+        assertEquals(BigInteger.valueOf(4), root.get("a.b").getValue());
+
+        // A path to a container selects all of it, and $ the whole document.
+        json = "[[1, {\"a\": [2]}], [3]]";
+        assertEquals(List.of(List.of(BigInteger.ONE, Map.of("a", List.of(BigInteger.TWO)))),
+                toValues(new JsonParser(new JsonLexer(json)).parse(JsonPath.compile("$[0]"))));
+        assertEquals(List.of(List.of(Map.of("a", List.of(BigInteger.TWO))), List.of()),
+                toValues(new JsonParser(new JsonLexer(json)).parse(JsonPath.compile("$.*[1]"))));
+        assertTrue(testEquality(new JsonParser(new JsonLexer(json)).parse(),
+                new JsonParser(new JsonLexer(json)).parse(JsonPath.compile("$"))));
+
+        // A quoted name ends at its quote, not at a bracket inside it.
+        assertEquals(Map.of("a]b", List.of(BigInteger.ONE)), toValues(new JsonParser(new JsonLexer(
+                "{\"a\": 0, \"a]b\": [1], \"b\": 2}")).parse(JsonPath.compile("$['a]b']"))));
+
+        for (String invalid : new String[] { "items", "$.", "$[x]", "$[1", "$..a", "$a", "$['a]", "$['a'x]", "$[\"" }) {
+            assertThrows(IllegalArgumentException.class, () -> JsonPath.compile(invalid), invalid);
+        }
+        assertThrows(JsonSyntaxErrorException.class,
+                () -> new JsonParser(new JsonLexer("{\"a\": {\"b\": [1}")).parse(JsonPath.compile("$.c")));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object toValues(JsonObject node) {
+        Object value = node.getValue();
+        if (value instanceof Map) {
+            Map<String, Object> map = new LinkedHashMap<>();
+            ((Map<String, JsonObject>) value).forEach((k, v) -> map.put(k, toValues(v)));
+            return map;
+        }
+        if (value instanceof List) {
+            return ((List<JsonObject>) value).stream().map(JsonParserTest::toValues).toList();
+        }
+        return value;
+    }
+
+    @Test
+    public void testPushParser() {
+        String json = "{\"a\": [1, 2.5, \"x\\\"y\"], \"b\": {\"c\": null}}\n[true, 10]  {}";
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        List<JsonObject> expected = List.of(new JsonParser(new JsonLexer(json)).parse(),
+                new JsonParser(new JsonLexer("[true, 10]")).parse(), new JsonMap(new LinkedHashMap<>()));
+
+        for (int chunk : new int[] { 1, 3, 7, bytes.length }) {
+            List<JsonObject> documents = new ArrayList<>();
+            JsonPushParser parser = new JsonPushParser(documents::add);
+            for (int i = 0; i < bytes.length; i += chunk) {
+                parser.feed(ByteBuffer.wrap(bytes, i, Math.min(chunk, bytes.length - i)));
+            }
+            parser.endOfInput();
+            assertEquals(expected.size(), documents.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertTrue(testEquality(expected.get(i), documents.get(i)));
+            }
+        }
+
+        // Events are passed on as soon as their tokens have arrived.
+        List<String> events = new ArrayList<>();
+        JsonPushParser parser = new JsonPushParser(new JsonHandler() {
+            @Override
+            public void startObject() {
+                events.add("{");
+            }
+
+            @Override
+            public void endObject() {
+                events.add("}");
+            }
+
+            @Override
+            public void startArray() {
+                events.add("[");
+            }
+
+            @Override
+            public void endArray() {
+                events.add("]");
+            }
+
+            @Override
+            public void key(JsonReader reader) {
+                events.add(reader.stringValue());
+            }
+
+            @Override
+            public void value(JsonType type, JsonReader reader) {
+                events.add(type == JsonType.NUMBER_INTEGER ? reader.numberText() : type.toString());
+            }
+        });
+        parser.feed(ByteBuffer.wrap("{\"a\": [1, 2".getBytes()));
+        assertEquals(List.of("{", "a", "[", "1"), events);
+        parser.feed(ByteBuffer.wrap("3]".getBytes()));
+        assertEquals(List.of("{", "a", "[", "1", "23", "]"), events);
+
+        // Errors are reported with the positions of the whole input.
+        String broken = "{\"a\": 1,\n \"b\" 2}";
+        Exception expectedError = assertThrows(JsonSyntaxErrorException.class,
+                new JsonParser(new JsonLexer(broken))::parse);
+        JsonPushParser failing = new JsonPushParser(document -> {
+        });
+        failing.feed(ByteBuffer.wrap(broken.substring(0, 12).getBytes()));
+        Exception e = assertThrows(JsonSyntaxErrorException.class,
+                () -> failing.feed(ByteBuffer.wrap(broken.substring(12).getBytes())));
+        assertEquals(expectedError.getMessage(), e.getMessage());
+        assertThrows(IllegalStateException.class, failing::endOfInput);
+
+        JsonPushParser unfinished = new JsonPushParser(document -> {
+        });
+        unfinished.feed(ByteBuffer.wrap("[1, [2".getBytes()));
+        e = assertThrows(JsonSyntaxErrorException.class, unfinished::endOfInput);
+        assertEquals(assertThrows(JsonSyntaxErrorException.class, new JsonParser(new JsonLexer("[1, [2"))::parse)
+                .getMessage(), e.getMessage());
+    }
+
+    @Test
+    public void testObjectsKeepTheirOrder() {
+        StringBuilder json = new StringBuilder("{");
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            String key = "k" + (i * 7919 % 20);
+            keys.add(key);
+            json.append(i > 0 ? ", " : "").append('"').append(key).append("\": ").append(i);
+        }
+        json.append(", \"k3\": \"again\"}");
+
+        Map<String, JsonObject> map = new JsonParser(new JsonLexer(json.toString())).parse().getValue();
+        assertEquals(keys, new ArrayList<>(map.keySet()));
+        assertEquals("again", map.get("k3").getValue());
+        assertEquals(BigInteger.valueOf(19), map.get(keys.get(19)).getValue());
+        assertFalse(map.containsKey("k20"));
+
+        // Removing entries keeps the order of the rest, and lookups work on
+        // both sides of the indexing threshold.
+        map.keySet().removeIf(key -> !key.equals("k0") && !key.equals("k1"));
+        assertEquals(List.of("k0", "k1"), new ArrayList<>(map.keySet()));
+        assertEquals(BigInteger.ZERO, map.get("k0").getValue());
+        map.remove("k0");
+        assertEquals(List.of("k1"), new ArrayList<>(map.keySet()));
+    }
+
+    @Test
+    public void testKeysAreShared() {
+        String json = "[{\"id\": 1, \"na\\u006de\": \"a\"}, {\"id\": 2, \"name\": \"b\", \"h\u00e9\": 0},"
+                + " {\"id\": 3, \"h\u00e9\": 1}]";
+        List<JsonTokenizer> lexers = List.of(new JsonLexer(json),
+                new JsonByteLexer(json.getBytes(StandardCharsets.UTF_8)));
+
+        for (JsonTokenizer lexer : lexers) {
+            KeyCache keys = new KeyCache(2);
+            List<JsonObject> records = new JsonParser(lexer, keys).parse().getValue();
+            List<String> first = List.copyOf(((JsonMap) records.get(0)).getValue().keySet());
+            List<String> second = List.copyOf(((JsonMap) records.get(1)).getValue().keySet());
+            List<String> third = List.copyOf(((JsonMap) records.get(2)).getValue().keySet());
+
+            assertEquals(List.of("id", "name"), first);
+            assertSame(first.get(0), second.get(0));
+            assertSame(first.get(1), second.get(1));
+            // The cache is full, so later keys are not shared.
+            assertEquals(2, keys.size());
+            assertEquals(second.get(2), third.get(1));
+            assertNotSame(second.get(2), third.get(1));
+        }
+
+        List<JsonObject> records = new JsonParser(new JsonLexer(json), null).parse().getValue();
+        String first = ((JsonMap) records.get(0)).getValue().keySet().iterator().next();
+        String second = ((JsonMap) records.get(1)).getValue().keySet().iterator().next();
+        assertNotSame(first, second);
+    }
+
     private boolean testEquality(JsonObject obj1, JsonObject obj2) {
-        if (obj1.getClass() != obj2.getClass()) {
+        // Arrays of longs and doubles are compared to plain arrays by their
+        // elements.
+        if (obj1.getClass() != obj2.getClass() && !(obj1 instanceof JsonArray && obj2 instanceof JsonArray)) {
             return false;
         }
 
@@ -0,0 +1,132 @@
+package tape;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.tomerab.ast.JsonObject;
+import com.tomerab.exceptions.JsonSyntaxErrorException;
+import com.tomerab.lexer.JsonByteLexer;
+import com.tomerab.lexer.JsonLexer;
+import com.tomerab.lexer.JsonToken.JsonType;
+import com.tomerab.parser.JsonParser;
+import com.tomerab.tape.JsonTape;
+import com.tomerab.visitor.AppendableSink;
+import com.tomerab.visitor.JsonTapePrettyPrinter;
+
+public class JsonTapeTest {
+    private static final String JSON = "{\"name\":\"Jo\\u00e9\", \"age\":30, \"tags\":[\"a\", {}, []],"
+            + " \"big\":123456789012345678901234567890, \"pi\":3.140, \"ok\":true, \"none\":null}";
+
+    @Test
+    public void testNavigation() {
+        JsonTape tape = JsonTape.parse(new JsonLexer(JSON));
+        int root = tape.root();
+
+        assertEquals(JsonType.OBJ_OPEN, tape.getType(root));
+        assertEquals(7, tape.size(root));
+        assertEquals("Jo\u00e9", tape.getString(tape.get(root, "name")));
+        assertEquals("Jo\\u00e9", tape.getSource(tape.get(root, "name")));
+        assertTrue(tape.hasEscapes(tape.get(root, "name")));
+        assertEquals(30, tape.getLong(tape.get(root, "age")));
+        assertFalse(tape.isLong(tape.get(root, "big")));
+        assertEquals(new BigInteger("123456789012345678901234567890"), tape.getInteger(tape.get(root, "big")));
+        assertEquals(new BigDecimal("3.140"), tape.getDecimal(tape.get(root, "pi")));
+        assertEquals("3.140", tape.getNumberText(tape.get(root, "pi")));
+        assertTrue(tape.getBoolean(tape.get(root, "ok")));
+        assertEquals(JsonType.NULL, tape.getType(tape.get(root, "none")));
+        assertEquals(-1, tape.get(root, "missing"));
+
+        int tags = tape.get(root, "tags");
+        assertEquals(3, tape.size(tags));
+        assertEquals("a", tape.getString(tape.get(tags, 0)));
+        assertEquals(0, tape.size(tape.get(tags, 1)));
+        assertEquals(-1, tape.first(tape.get(tags, 2)));
+        assertEquals(-1, tape.get(tags, 3));
+    }
+
+    @Test
+    public void testByteLexer() {
+        byte[] bytes = JSON.getBytes(StandardCharsets.UTF_8);
+        JsonTape tape = JsonTape.parse(new JsonByteLexer(bytes));
+
+        assertEquals("Jo\u00e9", tape.getString(tape.get(tape.root(), "name")));
+        assertEquals(30, tape.getLong(tape.get(tape.root(), "age")));
+    }
+
+    @Test
+    public void testObjectViews() {
+        JsonTape tape = JsonTape.parse(new JsonLexer(JSON));
+        Map<String, JsonObject> map = tape.toObject(tape.root()).getValue();
+
+        assertEquals(List.of("name", "age", "tags", "big", "pi", "ok", "none"), List.copyOf(map.keySet()));
+        assertEquals("Jo\u00e9", map.get("name").getValue());
+        assertEquals(30L, ((Number) map.get("age").getValue()).longValue());
+        assertTrue(map.containsKey("none"));
+
+        List<JsonObject> tags = map.get("tags").getValue();
+        assertEquals(3, tags.size());
+        assertEquals("a", tags.get(0).getValue());
+        assertTrue(((Map<?, ?>) tags.get(1).getValue()).isEmpty());
+        assertThrows(IndexOutOfBoundsException.class, () -> tags.get(3));
+    }
+
+    @Test
+    public void testDuplicateKeys() {
+        String json = "{\"a\": 1, \"b\": 2, \"a\": 3}";
+        JsonTape tape = JsonTape.parse(new JsonLexer(json));
+
+        // The tape keeps every property, where the tree keeps the last value.
+        assertEquals(3, tape.size(tape.root()));
+        assertEquals(1, tape.getLong(tape.get(tape.root(), "a")));
+        Map<String, JsonObject> map = tape.toObject(tape.root()).getValue();
+        assertEquals(List.of("a", "b", "a"), map.entrySet().stream().map(Map.Entry::getKey).toList());
+        Map<String, JsonObject> tree = new JsonParser(new JsonLexer(json)).parse().getValue();
+        assertEquals(3L, ((Number) tree.get("a").getValue()).longValue());
+
+        StringBuilder printed = new StringBuilder();
+        new JsonTapePrettyPrinter(2, new AppendableSink(printed)).print(tape);
+        assertEquals(2, printed.toString().split("\"a\"", -1).length - 1);
+    }
+
+    @Test
+    public void testSyntaxError() {
+        assertThrows(JsonSyntaxErrorException.class, () -> JsonTape.parse(new JsonLexer("{\"a\": [1, 2}")));
+    }
+
+    @Test
+    public void testPrettyPrint() {
+        JsonTape tape = JsonTape.parse(new JsonLexer("{\"a\\tb\": [1, \"x\\ny\"], \"c\": {}}"));
+
+        PrintStream out = System.out;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(bytes, true, StandardCharsets.UTF_8));
+        try {
+            new JsonTapePrettyPrinter(2).print(tape);
+        } finally {
+            System.setOut(out);
+        }
+
+        String expected = "{\n"
+                + "  \033[0;36m\"a\\tb\":\033[0m [\n"
+                + "    \033[0;35m1\033[0m,\n"
+                + "    \033[0;32m\"x\\ny\"\033[0m\n"
+                + "  ],\n"
+                + "  \033[0;36m\"c\":\033[0m {\n"
+                + "\n"
+                + "  }\n"
+                + "}";
+        assertEquals(expected, bytes.toString(StandardCharsets.UTF_8));
+    }
+}
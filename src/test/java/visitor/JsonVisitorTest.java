@@ -0,0 +1,142 @@
+package visitor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+import com.tomerab.ast.JsonObject;
+import com.tomerab.exceptions.JsonSyntaxErrorException;
+import com.tomerab.lexer.JsonByteLexer;
+import com.tomerab.lexer.JsonLexer;
+import com.tomerab.parser.JsonParser;
+import com.tomerab.tape.JsonTape;
+import com.tomerab.visitor.AppendableSink;
+import com.tomerab.visitor.ChannelSink;
+import com.tomerab.visitor.JsonCompactPrinter;
+import com.tomerab.visitor.JsonPrettyPrintVisitor;
+import com.tomerab.visitor.JsonStreamPrettyPrinter;
+import com.tomerab.visitor.JsonTapePrettyPrinter;
+
+public class JsonVisitorTest {
+    private static final String JSON = "{\"name\":\"Jo\\u00e9\", \"age\":30, \"tags\":[\"a\", {}, []],"
+            + " \"big\":123456789012345678901234567890, \"pi\":3.140, \"ok\":true, \"none\":null}";
+
+    @Test
+    public void testPrettyPrintToSink() {
+        String json = "{\"a\": [1, -9223372036854775808, 2.50, \"x\\ty\"], \"b\": {\"c\": [true, null]},"
+                + " \"d\": [], \"e\": [-12, 0, 345]}";
+
+        // A small buffer, so it is drained to the destination several times.
+        StringBuilder fromTape = new StringBuilder();
+        new JsonTapePrettyPrinter(2, new AppendableSink(fromTape, 20)).print(JsonTape.parse(new JsonLexer(json)));
+        StringBuilder fromTree = new StringBuilder();
+        new JsonParser(new JsonLexer(json)).parse()
+                .accept(new JsonPrettyPrintVisitor(2, new AppendableSink(fromTree, 20)));
+
+        assertTrue(fromTape.toString().contains("\033[0;35m-9223372036854775808\033[0m,\n"));
+        assertTrue(fromTree.toString().contains("\033[0;35m-12\033[0m,\n"));
+        assertEquals(fromTape.toString(), fromTree.toString());
+    }
+
+    @Test
+    public void testStreamPrettyPrint() {
+        String json = "{\"a\": [-0, 2.50, 1e5, 12345678901234567890], \"k\\u00e9\": \"x\\ny\", \"b\": [[], {}],"
+                + " \"c\": [true, null]}";
+        StringBuilder fromTape = new StringBuilder();
+        JsonTapePrettyPrinter tapePrinter = new JsonTapePrettyPrinter(2, new AppendableSink(fromTape));
+        tapePrinter.print(JsonTape.parse(new JsonLexer(json)));
+        tapePrinter.print(JsonTape.parse(new JsonLexer("[1]")));
+
+        // Each document of the input is printed in turn.
+        StringBuilder streamed = new StringBuilder();
+        JsonStreamPrettyPrinter printer = new JsonStreamPrettyPrinter(2, new AppendableSink(streamed));
+        JsonLexer lexer = new JsonLexer(json + "\n[1]");
+        while (lexer.hasNext()) {
+            printer.print(lexer);
+        }
+
+        assertEquals(fromTape.toString(), streamed.toString());
+        assertThrows(JsonSyntaxErrorException.class, () -> printer.print(new JsonLexer("{\"a\" 1}")));
+    }
+
+    @Test
+    public void testPrettyPrintConcurrently() {
+        JsonObject tree = new JsonParser(new JsonLexer(JSON)).parse();
+        String[] expected = new String[5];
+        for (int spacing = 1; spacing < expected.length; spacing++) {
+            StringBuilder text = new StringBuilder();
+            new JsonTapePrettyPrinter(spacing, new AppendableSink(text)).print(JsonTape.parse(new JsonLexer(JSON)));
+            expected[spacing] = text.toString();
+        }
+
+        // Visitors with different spacing print side by side without
+        // affecting each other's indentation.
+        IntStream.range(0, 64).parallel().forEach(i -> {
+            int spacing = 1 + i % 4;
+            StringBuilder text = new StringBuilder();
+            tree.accept(new JsonPrettyPrintVisitor(spacing, new AppendableSink(text)));
+            assertEquals(expected[spacing], text.toString());
+        });
+    }
+
+    @Test
+    public void testPrettyPrintToChannel() {
+        // Keys are printed decoded, so the escapes below reach the sink as
+        // two-, three- and four-byte characters.
+        String json = "{\"caf\\u00e9\": [1, 2], \"\\u20ac\\ud83d\\ude00\": \"x\\ty\", \"long\": \"" + "ab".repeat(100)
+                + "\", \"n\": [-9223372036854775808, 0.5, true, null]}";
+        JsonObject tree = new JsonParser(new JsonLexer(json)).parse();
+
+        StringBuilder text = new StringBuilder();
+        tree.accept(new JsonPrettyPrintVisitor(2, new AppendableSink(text)));
+        // A small buffer, so that text and fragments straddle its end.
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ChannelSink out = new ChannelSink(Channels.newChannel(bytes), 64)) {
+            tree.accept(new JsonPrettyPrintVisitor(2, out));
+        }
+
+        assertTrue(text.toString().contains("caf\u00e9"));
+        assertEquals(text.toString(), bytes.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testCompactPrint() {
+        String json = "{\n  \"a b\" : [ 1, -2.5e3, \"x \\\" y\" ],\n  \"c\":{\"d\":null}  }\n\t[true ,false]";
+        String expected = "{\"a b\":[1,-2.5e3,\"x \\\" y\"],\"c\":{\"d\":null}}[true,false]";
+
+        // The bytes of a run are kept while a small stream buffer moves on.
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        JsonByteLexer lexer = new JsonByteLexer(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), 4);
+        try (ChannelSink out = new ChannelSink(Channels.newChannel(bytes))) {
+            JsonCompactPrinter printer = new JsonCompactPrinter(out);
+            while (lexer.hasNext()) {
+                printer.print(lexer);
+            }
+        }
+        assertEquals(expected, bytes.toString(StandardCharsets.UTF_8));
+
+        // Commas the parser lets through without a value are dropped.
+        bytes.reset();
+        lexer = new JsonByteLexer("{\"a\":[1,],} [,1,,2 , ] {,} [ ,]".getBytes(StandardCharsets.UTF_8));
+        try (ChannelSink out = new ChannelSink(Channels.newChannel(bytes))) {
+            JsonCompactPrinter printer = new JsonCompactPrinter(out);
+            while (lexer.hasNext()) {
+                printer.print(lexer);
+            }
+        }
+        assertEquals("{\"a\":[1]}[1,2]{}[]", bytes.toString(StandardCharsets.UTF_8));
+
+        try (ChannelSink out = new ChannelSink(Channels.newChannel(new ByteArrayOutputStream()))) {
+            assertThrows(JsonSyntaxErrorException.class,
+                    () -> new JsonCompactPrinter(out).print(new JsonByteLexer("{\"a\" 1}".getBytes())));
+        }
+    }
+}